@@ -0,0 +1,74 @@
+package linkedinlearning;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the regex based category resolution the speechlet used to do with
+ * {@link CategoryLookup}. Run with {@code -prof gc} to see the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CategoryLookupBenchmark {
+
+  private static final String[][] MAPPINGS = {
+    { "courses", "COURSE" },
+    { "course", "COURSE" },
+    { "videos", "VIDEO" },
+    { "video", "VIDEO" },
+    { "learning paths", "LEARNING_PATH" },
+    { "learning path", "LEARNING_PATH" },
+    { "paths", "LEARNING_PATH" },
+    { "path", "LEARNING_PATH" },
+  };
+
+  private static final Map<String, String> LEGACY = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+  static {
+    for (String[] mapping : MAPPINGS) {
+      LEGACY.put(mapping[0], mapping[1]);
+    }
+  }
+
+  private final CategoryLookup _lookup = new CategoryLookup(MAPPINGS);
+
+  @Param({ "courses", "Learning Paths", "v. i. d. e. o.s", "tutorials" })
+  public String spoken;
+
+  /**
+   * The resolution as getLookupWord and getTopSellers did it before.
+   */
+  @Benchmark
+  public String legacy() {
+    String category = spoken.toLowerCase()
+      .replaceAll("\\s", "")
+      .replaceAll("\\.", "")
+      .replaceAll("three", "3");
+    String lookupCategory = LEGACY.get(category);
+    String stripped = spoken.replaceAll("\\.\\s*", "");
+    return (lookupCategory != null) ? lookupCategory : stripped;
+  }
+
+  @Benchmark
+  public String lookup() {
+    String lookupCategory = _lookup.lookup(spoken);
+    String stripped = CategoryLookup.stripPeriods(spoken);
+    return (lookupCategory != null) ? lookupCategory : stripped;
+  }
+}
@@ -0,0 +1,60 @@
+package linkedinlearning;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link LearningApiTransport} that answers from the JSON fixtures under {@code /fixtures}
+ * instead of the network: searches by their {@code entityType}, course details with
+ * {@code detailedCourses.json}.
+ */
+public class FixtureTransport implements LearningApiTransport {
+
+  private static final String[] FIXTURES = {
+    "search-COURSE", "search-VIDEO", "search-LEARNING_PATH", "detailedCourses",
+  };
+
+  private final Map<String, byte[]> _fixtures = new HashMap<String, byte[]>();
+
+  public FixtureTransport() throws IOException {
+    for (String fixture : FIXTURES) {
+      _fixtures.put(fixture, load(fixture));
+    }
+  }
+
+  /**
+   * Returns the raw bytes of a fixture, e.g. {@code "search-COURSE"}.
+   */
+  public static byte[] load(String fixture) throws IOException {
+    try (InputStream in = FixtureTransport.class.getResourceAsStream("/fixtures/" + fixture + ".json")) {
+      if (in == null) {
+	throw new IOException("No fixture " + fixture);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+	out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  @Override
+  public <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException {
+    return parser.parse(new ByteArrayInputStream(_fixtures.get(fixtureFor(pathAndQuery))));
+  }
+
+  private static String fixtureFor(String pathAndQuery) {
+    if (pathAndQuery.startsWith("/detailedCourses")) {
+      return "detailedCourses";
+    }
+    int start = pathAndQuery.indexOf("entityType=") + "entityType=".length();
+    int end = pathAndQuery.indexOf('&', start);
+    return "search-" + pathAndQuery.substring(start, (end < 0) ? pathAndQuery.length() : end);
+  }
+}
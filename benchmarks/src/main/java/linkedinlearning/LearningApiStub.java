@@ -0,0 +1,97 @@
+package linkedinlearning;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * A local HTTP stand-in for the Learning API that answers searches and course details from the
+ * JSON fixtures, optionally after a fixed delay to model the real service's latency, and a much
+ * longer one for a share of the requests to model its tail.
+ */
+public class LearningApiStub {
+
+  private final Server _server;
+  private final byte[][] _fixtures;
+  private final long _latencyMillis;
+  private final int _slowPercent;
+  private final long _slowLatencyMillis;
+
+  public LearningApiStub(long latencyMillis) throws IOException {
+    this(latencyMillis, 0, 0);
+  }
+
+  /**
+   * @param slowPercent
+   *            share of requests answered after {@code slowLatencyMillis} instead
+   */
+  public LearningApiStub(long latencyMillis, int slowPercent, long slowLatencyMillis) throws IOException {
+    _latencyMillis = latencyMillis;
+    _slowPercent = slowPercent;
+    _slowLatencyMillis = slowLatencyMillis;
+    _fixtures = new byte[][] {
+      FixtureTransport.load("search-COURSE"),
+      FixtureTransport.load("search-VIDEO"),
+      FixtureTransport.load("search-LEARNING_PATH"),
+      FixtureTransport.load("detailedCourses"),
+    };
+    _server = new Server(0);
+    _server.setHandler(new AbstractHandler() {
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+	  throws IOException {
+	  baseRequest.setHandled(true);
+	  byte[] body = fixtureFor(target, request.getParameter("entityType"));
+	  if (body == null) {
+	    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+	    return;
+	  }
+	  long latencyMillis = (ThreadLocalRandom.current().nextInt(100) < _slowPercent) ? _slowLatencyMillis : _latencyMillis;
+	  if (latencyMillis > 0) {
+	    try {
+	      Thread.sleep(latencyMillis);
+	    } catch (InterruptedException e) {
+	      Thread.currentThread().interrupt();
+	    }
+	  }
+	  response.setContentType("application/json");
+	  response.setContentLength(body.length);
+	  response.getOutputStream().write(body);
+	}
+      });
+  }
+
+  private byte[] fixtureFor(String path, String entityType) {
+    if (path.endsWith("/detailedCourses")) {
+      return _fixtures[3];
+    } else if (path.endsWith("/search")) {
+      if ("VIDEO".equals(entityType)) {
+	return _fixtures[1];
+      } else if ("LEARNING_PATH".equals(entityType)) {
+	return _fixtures[2];
+      }
+      return _fixtures[0];
+    }
+    return null;
+  }
+
+  /**
+   * Starts the stub on an ephemeral port and returns the base url to configure as
+   * {@code linkedinlearning.api.baseUrl}.
+   */
+  public String start() throws Exception {
+    _server.start();
+    return "http://127.0.0.1:" + ((ServerConnector) _server.getConnectors()[0]).getLocalPort();
+  }
+
+  public void stop() throws Exception {
+    _server.stop();
+  }
+}
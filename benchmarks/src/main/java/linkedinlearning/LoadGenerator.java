@@ -0,0 +1,317 @@
+package linkedinlearning;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import linkedinlearning.metrics.HistogramMetricsRegistry;
+import linkedinlearning.metrics.RequestMetrics;
+import linkedinlearning.storage.InMemoryDbClient;
+import linkedinlearning.storage.LinkedInLearningDao;
+import linkedinlearning.storage.LinkedInLearningDbClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Replays Alexa request envelopes through {@link LinkedInLearningSpeechletRequestStreamHandler}
+ * at a fixed concurrency and, optionally, a fixed rate, then reports throughput and latency
+ * percentiles per intent.
+ *
+ * <p>The Learning API is served by a {@link LearningApiStub} over HTTP, so requests go through
+ * the real pooled transport, hedging and circuit breaker; user data is kept in memory unless
+ * {@code --dynamodb=config} points the run at the table configured by
+ * {@code linkedinlearning.dynamodb.*}, e.g. DynamoDB Local.
+ * Every replayed envelope gets a fresh request id and timestamp and one of {@code --users}
+ * customer ids.
+ *
+ * <p>With a rate, latencies are measured from when each request was due rather than when it was
+ * sent, so a stalled handler shows up in the percentiles instead of silently lowering the load.
+ * The handler's own {@link RequestMetrics} are collected as well and reported per intent, to
+ * show which phase the latency comes from.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar linkedinlearning.LoadGenerator \
+ *     --threads=16 --rate=200 --duration=60 --warmup=10 --users=500 --apiLatency=80
+ * </pre>
+ */
+public class LoadGenerator {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * A corpus envelope and the label its results are reported under.
+   */
+  private static final class Envelope {
+    final String label;
+    final ObjectNode template;
+
+    Envelope(String label, ObjectNode template) {
+      this.label = label;
+      this.template = template;
+    }
+  }
+
+  /**
+   * Latencies and errors of one label.
+   */
+  private static final class Stats {
+    private long[] _latencies = new long[1024];
+    private int _count;
+    private int _errors;
+
+    synchronized void record(long latencyNanos, boolean error) {
+      if (_count == _latencies.length) {
+	_latencies = Arrays.copyOf(_latencies, _count * 2);
+      }
+      _latencies[_count++] = latencyNanos;
+      if (error) {
+	_errors++;
+      }
+    }
+
+    synchronized String report(String label, double seconds) {
+      long[] sorted = Arrays.copyOf(_latencies, _count);
+      Arrays.sort(sorted);
+      return String.format("%-34s %8d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f", label, _count, _errors,
+			   _count / seconds, millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.99),
+			   millis(sorted, 0.999), millis(sorted, 1.0));
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+      if (sorted.length == 0) {
+	return 0;
+      }
+      int index = (int) Math.ceil(percentile * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1e6;
+    }
+  }
+
+  private final LinkedInLearningSpeechletRequestStreamHandler _handler;
+  private final List<Envelope> _corpus;
+  private final int _threads;
+  private final double _rate;
+  private final int _users;
+
+  LoadGenerator(LinkedInLearningSpeechletRequestStreamHandler handler, List<Envelope> corpus, int threads,
+	        double rate, int users) {
+    _handler = handler;
+    _corpus = corpus;
+    _threads = threads;
+    _rate = rate;
+    _users = users;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (System.getProperty("log4j.configuration") == null) {
+      System.setProperty("log4j.configuration", "log4j-benchmarks.properties");
+    }
+    // The handler under test gets its own DAO, so skip building and priming the configured one.
+    if (System.getProperty("linkedinlearning.startup.eagerInit") == null) {
+      System.setProperty("linkedinlearning.startup.eagerInit", "false");
+    }
+
+    Map<String, String> options = new TreeMap<String, String>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (!arg.startsWith("--") || eq < 0) {
+	System.err.println("Usage: LoadGenerator [--threads=8] [--rate=0] [--duration=30] [--warmup=5] [--users=100]"
+			   + " [--apiLatency=0] [--apiSlowPercent=0] [--apiSlowLatency=2000] [--corpus=dir]"
+			   + " [--dynamodb=memory|config]");
+	System.exit(1);
+      }
+      options.put(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+    int threads = Integer.parseInt(option(options, "threads", "8"));
+    double rate = Double.parseDouble(option(options, "rate", "0"));
+    long durationMillis = Long.parseLong(option(options, "duration", "30")) * 1000L;
+    long warmupMillis = Long.parseLong(option(options, "warmup", "5")) * 1000L;
+    int users = Integer.parseInt(option(options, "users", "100"));
+    long apiLatencyMillis = Long.parseLong(option(options, "apiLatency", "0"));
+    int apiSlowPercent = Integer.parseInt(option(options, "apiSlowPercent", "0"));
+    long apiSlowLatencyMillis = Long.parseLong(option(options, "apiSlowLatency", "2000"));
+    String corpusDir = option(options, "corpus", null);
+    boolean configuredTable = "config".equals(option(options, "dynamodb", "memory"));
+
+    LearningApiStub stub = new LearningApiStub(apiLatencyMillis, apiSlowPercent, apiSlowLatencyMillis);
+    System.setProperty("linkedinlearning.api.baseUrl", stub.start());
+    LinkedInLearningApiHelper.setTransport(
+      CircuitBreakingTransport.fromConfig(HedgingTransport.fromConfig(PooledHttpTransport.fromConfig())));
+
+    LinkedInLearningDao dao = new LinkedInLearningDao(configuredTable ? LinkedInLearningDbClient.fromConfig() : new InMemoryDbClient());
+    LoadGenerator generator = new LoadGenerator(new LinkedInLearningSpeechletRequestStreamHandler(dao),
+						loadCorpus(corpusDir), threads, rate, users);
+
+    // Long enough a window that the histograms cover the whole run.
+    long metricsWindowMillis = warmupMillis + durationMillis + 60 * 60 * 1000L;
+    RequestMetrics.setRegistry(new HistogramMetricsRegistry(metricsWindowMillis));
+    System.out.printf("Warming up for %ds%n", warmupMillis / 1000);
+    generator.run(warmupMillis);
+    HistogramMetricsRegistry phases = new HistogramMetricsRegistry(metricsWindowMillis);
+    RequestMetrics.setRegistry(phases);
+    System.out.printf("Measuring for %ds with %d threads at %s%n", durationMillis / 1000, threads,
+		      (rate > 0) ? rate + " requests/s" : "full speed");
+    Map<String, Stats> results = generator.run(durationMillis);
+
+    double seconds = durationMillis / 1000.0;
+    System.out.printf("%-34s %8s %7s %9s %9s %9s %9s %9s %9s%n", "request", "count", "errors", "req/s",
+		      "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    Stats total = new Stats();
+    for (Map.Entry<String, Stats> entry : results.entrySet()) {
+      System.out.println(entry.getValue().report(entry.getKey(), seconds));
+      synchronized (entry.getValue()) {
+	for (int i = 0; i < entry.getValue()._count; i++) {
+	  total.record(entry.getValue()._latencies[i], false);
+	}
+	total._errors += entry.getValue()._errors;
+      }
+    }
+    System.out.println(total.report("all", seconds));
+    System.out.println();
+    System.out.print(phases.report());
+
+    Runtime runtime = Runtime.getRuntime();
+    System.out.printf("Heap used %dMB of %dMB max%n", (runtime.totalMemory() - runtime.freeMemory()) >> 20,
+		      runtime.maxMemory() >> 20);
+
+    stub.stop();
+    System.exit(0);
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    String value = options.get(name);
+    return (value == null) ? defaultValue : value;
+  }
+
+  /**
+   * Replays the corpus for {@code durationMillis} and returns the stats per label.
+   */
+  Map<String, Stats> run(long durationMillis) throws InterruptedException {
+    Map<String, Stats> results = new TreeMap<String, Stats>();
+    for (Envelope envelope : _corpus) {
+      results.put(envelope.label, new Stats());
+    }
+
+    AtomicLong sequence = new AtomicLong();
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    ExecutorService workers = Executors.newFixedThreadPool(_threads);
+    for (int t = 0; t < _threads; t++) {
+      workers.execute(() -> {
+	  ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+	  while (true) {
+	    long n = sequence.getAndIncrement();
+	    long due = (_rate > 0) ? start + (long) (n * 1e9 / _rate) : System.nanoTime();
+	    if (due >= deadline || System.nanoTime() >= deadline) {
+	      break;
+	    }
+
+	    Envelope envelope = _corpus.get((int) (n % _corpus.size()));
+	    byte[] input = rewrite(envelope.template, n);
+	    while (System.nanoTime() < due) {
+	      LockSupport.parkNanos(due - System.nanoTime());
+	    }
+
+	    boolean error = false;
+	    long sent = (_rate > 0) ? due : System.nanoTime();
+	    try {
+	      output.reset();
+	      _handler.handleRequest(new ByteArrayInputStream(input), output, null);
+	    } catch (Exception e) {
+	      error = true;
+	    }
+	    results.get(envelope.label).record(System.nanoTime() - sent, error);
+	  }
+	});
+    }
+    workers.shutdown();
+    workers.awaitTermination(durationMillis + 60 * 1000L, TimeUnit.MILLISECONDS);
+    return results;
+  }
+
+  /**
+   * Returns the template with a fresh request id, the current time and the n-th customer.
+   */
+  private byte[] rewrite(ObjectNode template, long n) {
+    ObjectNode envelope = template.deepCopy();
+    String userId = "amzn1.ask.account.LOAD" + (n % _users);
+
+    ObjectNode request = (ObjectNode) envelope.get("request");
+    request.put("requestId", "EdwRequestId.load-" + n);
+    request.put("timestamp", Instant.now().truncatedTo(ChronoUnit.SECONDS).toString());
+
+    JsonNode session = envelope.get("session");
+    if (session instanceof ObjectNode) {
+      ((ObjectNode) session).put("sessionId", "SessionId.load-" + (n % _users));
+      ((ObjectNode) session.with("user")).put("userId", userId);
+    }
+    JsonNode system = envelope.path("context").get("System");
+    if (system instanceof ObjectNode) {
+      ((ObjectNode) system).with("user").put("userId", userId);
+    }
+
+    try {
+      return MAPPER.writeValueAsBytes(envelope);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write request envelope", e);
+    }
+  }
+
+  /**
+   * Loads every {@code .json} envelope in {@code dir}, or the bundled corpus if it is {@code null}.
+   */
+  static List<Envelope> loadCorpus(String dir) throws IOException {
+    List<Envelope> corpus = new ArrayList<Envelope>();
+    if (dir != null) {
+      File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".json"));
+      if (files == null || files.length == 0) {
+	throw new IOException("No request envelopes in " + dir);
+      }
+      Arrays.sort(files);
+      for (File file : files) {
+	corpus.add(envelope((ObjectNode) MAPPER.readTree(file)));
+      }
+      return corpus;
+    }
+
+    try (BufferedReader index = new BufferedReader(new InputStreamReader(
+	   LoadGenerator.class.getResourceAsStream("/requests/corpus.txt"), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = index.readLine()) != null) {
+	line = line.trim();
+	if (line.isEmpty() || line.startsWith("#")) {
+	  continue;
+	}
+	try (InputStream in = LoadGenerator.class.getResourceAsStream("/requests/" + line)) {
+	  corpus.add(envelope((ObjectNode) MAPPER.readTree(in)));
+	}
+      }
+    }
+    return corpus;
+  }
+
+  private static Envelope envelope(ObjectNode template) {
+    JsonNode request = template.path("request");
+    String type = request.path("type").asText();
+    String label = "IntentRequest".equals(type) ? request.path("intent").path("name").asText() : type;
+    return new Envelope(label, template);
+  }
+}
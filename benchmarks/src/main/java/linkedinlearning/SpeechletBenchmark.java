@@ -0,0 +1,167 @@
+package linkedinlearning;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import linkedinlearning.cache.ExpiringLruCache;
+import linkedinlearning.storage.InMemoryDbClient;
+import linkedinlearning.storage.LearningUserData;
+import linkedinlearning.storage.LinkedInLearningDao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazon.speech.slu.Intent;
+import com.amazon.speech.slu.Slot;
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.SpeechletResponse;
+import com.amazon.speech.speechlet.User;
+
+/**
+ * Measures {@link LinkedInLearningSpeechlet#onIntent} per intent, with the Learning API served
+ * from fixtures and DynamoDB held in memory. Each invocation flushes the DAO as the request
+ * handler does.
+ *
+ * <p>With {@code cached=false} the search, playback, popular and user data caches are cleared
+ * before every call, so each call pays for parsing the API response and loading the user.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+@State(Scope.Benchmark)
+public class SpeechletBenchmark {
+
+  private static final String CUSTOMER_ID = "amzn1.ask.account.BENCHMARK";
+
+  @Param({ "true", "false" })
+  public boolean cached;
+
+  private InMemoryDbClient _dbClient;
+  private LinkedInLearningDao _dao;
+  private LinkedInLearningSpeechlet _speechlet;
+
+  private IntentRequest _topSellers;
+  private IntentRequest _teachMe;
+  private IntentRequest _hearMore;
+  private IntentRequest _pause;
+  private IntentRequest _resume;
+
+  @Setup
+  public void setUp() throws Exception {
+    LinkedInLearningApiHelper.setTransport(new FixtureTransport());
+
+    _dbClient = new InMemoryDbClient();
+    _dao = new LinkedInLearningDao(_dbClient, true, 2000L,
+				   new ExpiringLruCache<String, LearningUserData>("userData", 1000, 60 * 1000L));
+    // A negative maximum age never serves a snapshot, so uncached runs always search.
+    _speechlet = new LinkedInLearningSpeechlet(_dao, new PopularSnapshots(
+      category -> LinkedInLearningApiHelper.summarize(LinkedInLearningApiHelper.search(category, ""), category),
+      10, Long.MAX_VALUE, cached ? Long.MAX_VALUE : -1L));
+
+    _topSellers = request("TopSellers", slot("Category", "courses"));
+    _teachMe = request("TeachMe", slot("Category", "courses"), slot("Topic", "java"));
+    _hearMore = request("HearMore");
+    _pause = request("AMAZON.PauseIntent");
+    _resume = request("AMAZON.ResumeIntent");
+
+    // Something to pause and resume.
+    _speechlet.onIntent(_hearMore, listeningSession());
+    _dao.flush();
+  }
+
+  @TearDown
+  public void tearDown() {
+    LinkedInLearningApiHelper.getSearchCache().clear();
+    LinkedInLearningApiHelper.getPlaybackCache().clear();
+  }
+
+  @Benchmark
+  public SpeechletResponse topSellers() throws Exception {
+    return onIntent(_topSellers, newSession());
+  }
+
+  @Benchmark
+  public SpeechletResponse teachMe() throws Exception {
+    return onIntent(_teachMe, newSession());
+  }
+
+  @Benchmark
+  public SpeechletResponse hearMore() throws Exception {
+    return onIntent(_hearMore, listeningSession());
+  }
+
+  @Benchmark
+  public SpeechletResponse pause() throws Exception {
+    return onIntent(_pause, newSession());
+  }
+
+  @Benchmark
+  public SpeechletResponse resume() throws Exception {
+    return onIntent(_resume, newSession());
+  }
+
+  private SpeechletResponse onIntent(IntentRequest request, Session session) throws Exception {
+    if (!cached) {
+      LinkedInLearningApiHelper.getSearchCache().clear();
+      LinkedInLearningApiHelper.getPlaybackCache().clear();
+      _dao.getCache().clear();
+    }
+    SpeechletResponse response = _speechlet.onIntent(request, session);
+    _dao.flush();
+    return response;
+  }
+
+  private static Session newSession() {
+    return Session.builder()
+      .withSessionId("SessionId.benchmark")
+      .withIsNew(true)
+      .withUser(User.builder().withUserId(CUSTOMER_ID).build())
+      .withAttributes(new HashMap<String, Object>())
+      .build();
+  }
+
+  /**
+   * A session that has listed results, with the attributes as they come back from Alexa.
+   */
+  private static Session listeningSession() {
+    Map<String, Object> attributes = new HashMap<String, Object>();
+    attributes.put("current", 0);
+    attributes.put("items", Arrays.asList("java-essential-training", "Java Essential Training"));
+    return Session.builder()
+      .withSessionId("SessionId.benchmark")
+      .withIsNew(false)
+      .withUser(User.builder().withUserId(CUSTOMER_ID).build())
+      .withAttributes(attributes)
+      .build();
+  }
+
+  private static Slot slot(String name, String value) {
+    return Slot.builder().withName(name).withValue(value).build();
+  }
+
+  private static IntentRequest request(String intentName, Slot... slots) {
+    Map<String, Slot> slotMap = new HashMap<String, Slot>();
+    for (Slot slot : slots) {
+      slotMap.put(slot.getName(), slot);
+    }
+    return IntentRequest.builder()
+      .withRequestId("EdwRequestId.benchmark")
+      .withIntent(Intent.builder().withName(intentName).withSlots(slotMap).build())
+      .build();
+  }
+}
@@ -0,0 +1,132 @@
+package linkedinlearning;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures cold starts of the Lambda artifact: starts {@link ColdStart} in fresh JVMs, with and
+ * without the AppCDS archive and C1-only compilation, and reports the time from JVM start to the
+ * first response and of the handler's initialization.
+ *
+ * <p>The Learning API calls made while starting up go to a local {@link LearningApiStub}; the
+ * DynamoDB warm-up is skipped unless {@code --jvmArgs} turns it back on.
+ *
+ * <pre>
+ * mvn -Plambda,appcds verify
+ * java -cp benchmarks/target/benchmarks.jar linkedinlearning.StartupBenchmark \
+ *     --jar=target/alexa-linkedin-learning-1.0-lambda.jar --archive=target/linkedinlearning.jsa --runs=10
+ * </pre>
+ */
+public class StartupBenchmark {
+
+  private static final Pattern RESULT = Pattern.compile("initMillis=(\\d+) .*timeToFirstResponseMillis=(\\d+)");
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new TreeMap<String, String>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (!arg.startsWith("--") || eq < 0) {
+	System.err.println("Usage: StartupBenchmark [--jar=target/alexa-linkedin-learning-1.0-lambda.jar]"
+			   + " [--archive=target/linkedinlearning.jsa] [--runs=10] [--request=envelope.json] [--jvmArgs=...]");
+	System.exit(1);
+      }
+      options.put(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+    String jar = option(options, "jar", "target/alexa-linkedin-learning-1.0-lambda.jar");
+    String archive = option(options, "archive", null);
+    int runs = Integer.parseInt(option(options, "runs", "10"));
+    String request = option(options, "request", null);
+    String jvmArgs = option(options, "jvmArgs", "-Dlinkedinlearning.startup.primeDynamoDb=false");
+
+    if (!new File(jar).isFile()) {
+      System.err.println("No Lambda jar at " + jar + ", build it with mvn -Plambda package");
+      System.exit(1);
+    }
+
+    LearningApiStub stub = new LearningApiStub(0);
+    String baseUrl = stub.start();
+
+    Map<String, List<String>> configurations = new LinkedHashMap<String, List<String>>();
+    configurations.put("default", Arrays.<String>asList());
+    configurations.put("c1", Arrays.asList("-XX:TieredStopAtLevel=1"));
+    if (archive != null) {
+      configurations.put("appcds", Arrays.asList("-XX:SharedArchiveFile=" + archive));
+      configurations.put("appcds+c1", Arrays.asList("-XX:SharedArchiveFile=" + archive, "-XX:TieredStopAtLevel=1"));
+    }
+
+    System.out.printf("%-12s %8s %8s %8s %8s %8s %8s%n", "config", "ttfr p50", "ttfr p90", "ttfr min",
+		      "init p50", "init p90", "init min");
+    for (Map.Entry<String, List<String>> configuration : configurations.entrySet()) {
+      long[] timeToFirstResponse = new long[runs];
+      long[] init = new long[runs];
+      for (int i = 0; i < runs; i++) {
+	List<String> command = new ArrayList<String>();
+	command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+	command.addAll(configuration.getValue());
+	if (!jvmArgs.trim().isEmpty()) {
+	  command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+	}
+	command.add("-Dlinkedinlearning.api.baseUrl=" + baseUrl);
+	command.add("-cp");
+	command.add(jar);
+	command.add("linkedinlearning.ColdStart");
+	if (request != null) {
+	  command.add(request);
+	}
+
+	long[] result = run(command);
+	init[i] = result[0];
+	timeToFirstResponse[i] = result[1];
+      }
+      Arrays.sort(timeToFirstResponse);
+      Arrays.sort(init);
+      System.out.printf("%-12s %8d %8d %8d %8d %8d %8d%n", configuration.getKey(),
+			percentile(timeToFirstResponse, 0.5), percentile(timeToFirstResponse, 0.9), timeToFirstResponse[0],
+			percentile(init, 0.5), percentile(init, 0.9), init[0]);
+    }
+
+    stub.stop();
+    System.exit(0);
+  }
+
+  /**
+   * Runs one cold start and returns its initialization time and time to first response.
+   */
+  private static long[] run(List<String> command) throws Exception {
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    long[] result = null;
+    try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = output.readLine()) != null) {
+	Matcher matcher = RESULT.matcher(line);
+	if (matcher.find()) {
+	  result = new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+	}
+      }
+    }
+    int exitCode = process.waitFor();
+    if (result == null) {
+      throw new IllegalStateException("Cold start exited with " + exitCode + " without reporting: " + command);
+    }
+    return result;
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    String value = options.get(name);
+    return (value == null) ? defaultValue : value;
+  }
+}
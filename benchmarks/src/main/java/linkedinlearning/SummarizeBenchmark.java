@@ -0,0 +1,60 @@
+package linkedinlearning;
+
+import static linkedinlearning.LinkedInLearningApiHelper.Content;
+import static linkedinlearning.LinkedInLearningApiHelper.SearchResults;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures decoding a search response and summarizing it into the titles the skill speaks, for
+ * the search fixture of each category.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+@State(Scope.Benchmark)
+public class SummarizeBenchmark {
+
+  @Param({ "COURSE", "VIDEO", "LEARNING_PATH" })
+  public String category;
+
+  private byte[] _json;
+  private SearchResults _results;
+
+  @Setup
+  public void setUp() throws Exception {
+    _json = FixtureTransport.load("search-" + category);
+    _results = SearchResultsReader.readFull(new ByteArrayInputStream(_json));
+  }
+
+  @Benchmark
+  public List<Content> summarize() {
+    return LinkedInLearningApiHelper.summarize(_results, category);
+  }
+
+  @Benchmark
+  public List<Content> fullParseAndSummarize() throws Exception {
+    return LinkedInLearningApiHelper.summarize(SearchResultsReader.readFull(new ByteArrayInputStream(_json)), category);
+  }
+
+  @Benchmark
+  public List<Content> streamingParseAndSummarize() throws Exception {
+    return LinkedInLearningApiHelper.summarize(SearchResultsReader.readStreaming(new ByteArrayInputStream(_json)), category);
+  }
+}
@@ -0,0 +1,62 @@
+package linkedinlearning.storage;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+
+/**
+ * A {@link LinkedInLearningDbClient} that keeps items in memory, with the same versioning and
+ * conditional position updates as the table.
+ */
+public class InMemoryDbClient extends LinkedInLearningDbClient {
+
+  private final ConcurrentMap<String, LearningUserDataItem> _items =
+    new ConcurrentHashMap<String, LearningUserDataItem>();
+
+  public InMemoryDbClient() {
+    super(new AmazonDynamoDBClient(new BasicAWSCredentials("benchmark", "benchmark")));
+  }
+
+  @Override
+  public LearningUserDataItem load(final LearningUserDataItem dataItem) {
+    LearningUserDataItem stored = _items.get(dataItem.getCustomerId());
+    return (stored == null) ? null : LearningUserDataItem.of(stored.getCustomerId(), stored.toUserData());
+  }
+
+  @Override
+  public synchronized long save(final LearningUserDataItem dataItem, final long videosStarted) {
+    LearningUserDataItem stored = _items.get(dataItem.getCustomerId());
+    LearningUserData userData = dataItem.toUserData();
+    long total = (stored == null || stored.getTotalVideos() == null) ? 0L : stored.getTotalVideos();
+    userData.setTotalVideos(total + videosStarted);
+    userData.setVersion(nextVersion(stored));
+    _items.put(dataItem.getCustomerId(), LearningUserDataItem.of(dataItem.getCustomerId(), userData));
+    return userData.getVersion();
+  }
+
+  @Override
+  public synchronized long savePosition(final LearningUserDataItem dataItem) {
+    LearningUserDataItem stored = _items.get(dataItem.getCustomerId());
+    if (!Objects.equals(dataItem.getVersion(), (stored == null) ? null : stored.getVersion())) {
+      throw new ConditionalCheckFailedException("The conditional request failed");
+    }
+    LearningUserData userData = (stored == null) ? new LearningUserData() : stored.toUserData();
+    userData.setStart(dataItem.getStart());
+    userData.setOffset(dataItem.getOffset());
+    userData.setVersion(nextVersion(stored));
+    _items.put(dataItem.getCustomerId(), LearningUserDataItem.of(dataItem.getCustomerId(), userData));
+    return userData.getVersion();
+  }
+
+  public void clear() {
+    _items.clear();
+  }
+
+  private static long nextVersion(LearningUserDataItem stored) {
+    return (stored == null || stored.getVersion() == null) ? 1L : stored.getVersion() + 1L;
+  }
+}
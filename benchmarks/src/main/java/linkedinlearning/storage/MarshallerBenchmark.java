@@ -0,0 +1,53 @@
+package linkedinlearning.storage;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link LearningUserDataItem.LearningUserDataMarshaller} both ways.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+@State(Scope.Benchmark)
+public class MarshallerBenchmark {
+
+  private final LearningUserDataItem.LearningUserDataMarshaller _marshaller =
+    new LearningUserDataItem.LearningUserDataMarshaller();
+
+  private LearningUserData _userData;
+  private String _json;
+
+  @Setup
+  public void setUp() {
+    _userData = new LearningUserData();
+    _userData.setTitle("Java Essential Training");
+    _userData.setSlug("java-essential-training");
+    _userData.setStart(1490000000000L);
+    _userData.setOffset(123456L);
+    _userData.setTotalVideos(7L);
+    _json = _marshaller.marshall(_userData);
+  }
+
+  @Benchmark
+  public String marshall() {
+    return _marshaller.marshall(_userData);
+  }
+
+  @Benchmark
+  public LearningUserData unmarshall() {
+    return _marshaller.unmarshall(LearningUserData.class, _json);
+  }
+}
@@ -0,0 +1,147 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import linkedinlearning.LinkedInLearningConfig;
+import linkedinlearning.LinkedInLearningSpeechlet;
+import linkedinlearning.LinkedInLearningSpeechletServlet;
+import linkedinlearning.storage.LinkedInLearningDao;
+import linkedinlearning.storage.LinkedInLearningDbClient;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.speech.Sdk;
+
+/**
+ * Runs the skill as a long-lived service instead of a Lambda function, so caches stay warm and
+ * connections stay pooled between requests. Requests are verified by the Alexa servlet (request
+ * signature, timestamp and the same application ids as the Lambda handler, see
+ * {@link LinkedInLearningSpeechlet#getSupportedApplicationIds()}) and handled by the
+ * same {@link LinkedInLearningSpeechlet} and user data store.
+ *
+ * <p>Serves HTTPS when {@code javax.net.ssl.keyStore} is set, otherwise plain HTTP for use
+ * behind a TLS terminating proxy. On Java 21 and later each request runs on its own virtual
+ * thread; on older runtimes requests run on Jetty's thread pool.
+ */
+public final class Launcher {
+    static {
+        // The default log4j.properties logs through the Lambda runtime.
+        if (System.getProperty("log4j.configuration") == null) {
+            System.setProperty("log4j.configuration", "log4j-server.properties");
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(Launcher.class);
+
+    private static final String HTTPS_SCHEME = "https";
+
+    private Launcher() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        int port = LinkedInLearningConfig.getInt("linkedinlearning.server.port", 8888);
+        String path = LinkedInLearningConfig.getString("linkedinlearning.server.path", "/linkedinlearning");
+
+        defaultProperty(Sdk.SUPPORTED_APPLICATION_IDS_SYSTEM_PROPERTY,
+                String.join(",", LinkedInLearningSpeechlet.getSupportedApplicationIds()));
+        defaultProperty(Sdk.TIMESTAMP_TOLERANCE_SYSTEM_PROPERTY, "150");
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(
+                LinkedInLearningConfig.getInt("linkedinlearning.server.maxThreads", 200));
+        threadPool.setName("jetty");
+        Server server = new Server(threadPool);
+        server.setConnectors(new Connector[] { createConnector(server, port) });
+
+        LinkedInLearningDao dao = new LinkedInLearningDao(LinkedInLearningDbClient.fromConfig());
+        ExecutorService executor =
+                LinkedInLearningConfig.getBoolean("linkedinlearning.server.virtualThreads", true)
+                        ? newVirtualThreadPerTaskExecutor() : null;
+
+        ServletHolder holder = new ServletHolder(new LinkedInLearningSpeechletServlet(
+                new LinkedInLearningSpeechlet(dao), executor,
+                LinkedInLearningConfig.getLong("linkedinlearning.server.requestTimeoutMillis", 10000L)));
+        holder.setAsyncSupported(true);
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        context.addServlet(holder, path);
+        server.setHandler(context);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (Exception e) {
+                log.warn("Unable to stop server", e);
+            }
+            if (executor != null) {
+                executor.shutdown();
+            }
+            dao.flush();
+        }, "launcher-shutdown"));
+
+        server.start();
+        log.info("Serving {} on port {} with {}", path, port,
+                (executor != null) ? "virtual threads" : "the server thread pool");
+        server.join();
+    }
+
+    private static Connector createConnector(Server server, int port) {
+        String keyStore = System.getProperty("javax.net.ssl.keyStore");
+        if (keyStore == null) {
+            ServerConnector connector = new ServerConnector(server);
+            connector.setPort(port);
+            return connector;
+        }
+
+        SslConnectionFactory sslConnectionFactory = new SslConnectionFactory();
+        SslContextFactory sslContextFactory = sslConnectionFactory.getSslContextFactory();
+        sslContextFactory.setKeyStorePath(keyStore);
+        sslContextFactory.setKeyStorePassword(System.getProperty("javax.net.ssl.keyStorePassword"));
+        sslContextFactory.setIncludeCipherSuites(Sdk.SUPPORTED_CIPHER_SUITES);
+
+        HttpConfiguration httpConf = new HttpConfiguration();
+        httpConf.setSecurePort(port);
+        httpConf.setSecureScheme(HTTPS_SCHEME);
+        httpConf.addCustomizer(new SecureRequestCustomizer());
+
+        ServerConnector connector =
+                new ServerConnector(server, sslConnectionFactory, new HttpConnectionFactory(httpConf));
+        connector.setPort(port);
+        return connector;
+    }
+
+    private static void defaultProperty(String name, String value) {
+        String current = System.getProperty(name);
+        if (current == null || current.trim().isEmpty()) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /**
+     * Returns {@code Executors.newVirtualThreadPerTaskExecutor()} when the runtime has it, or
+     * {@code null}. Looked up reflectively as the skill is built for Java 8.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            log.info("Virtual threads are not available on Java {}", System.getProperty("java.version"));
+        } catch (ReflectiveOperationException e) {
+            log.warn("Unable to create virtual thread executor", e);
+        }
+        return null;
+    }
+}
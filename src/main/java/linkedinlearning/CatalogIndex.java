@@ -0,0 +1,405 @@
+package linkedinlearning;
+
+import static linkedinlearning.LinkedInLearningApiHelper.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local, read-only index of the course and learning path catalog that answers keyword searches
+ * without calling the Learning API.
+ *
+ * <p>The catalog is stored as a gzipped binary file (see {@link #write(OutputStream)}) holding
+ * the entity type, title, slug, short description and description of every entry. On load an
+ * in-memory inverted index from token to entries is built. A search returns the entries that
+ * contain every keyword, ranked by where the keywords occur (title before short description
+ * before description) and how rare they are across the catalog.
+ *
+ * <p>The default index is read from {@code linkedinlearning.catalog.path} or, failing that, the
+ * {@code /catalog.idx} classpath resource. Without either, no index is used. Build an index
+ * with {@link #main(String[])}.
+ */
+public final class CatalogIndex {
+  private static final Logger log = LoggerFactory.getLogger(CatalogIndex.class);
+
+  private static final int MAGIC = 0x4c4c4349; // "LLCI"
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String[] ENTITY_TYPES = { "COURSE", "LEARNING_PATH" };
+
+  private static final int IN_TITLE = 1;
+  private static final int IN_SHORT_DESCRIPTION = 2;
+  private static final int IN_DESCRIPTION = 4;
+
+  private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList(
+    "a", "about", "an", "and", "for", "how", "in", "of", "on", "the", "to", "with"));
+
+  /**
+   * Descriptions are cut to this many characters, which keeps the file small and within the
+   * limits of {@link DataOutputStream#writeUTF(String)}.
+   */
+  private static final int MAX_TEXT_LENGTH = 4000;
+
+  private static volatile CatalogIndex _default;
+  private static volatile boolean _defaultLoaded;
+
+  private final byte[] _types;
+  private final String[] _titles;
+  private final String[] _slugs;
+  private final String[] _shortDescriptions;
+  private final String[] _descriptions;
+
+  /**
+   * Token to the sorted ids of the entries containing it.
+   */
+  private final Map<String, int[]> _postings;
+
+  /**
+   * Token to the {@code IN_*} flags saying where it occurs, parallel to {@link #_postings}.
+   */
+  private final Map<String, byte[]> _fields;
+
+  private CatalogIndex(byte[] types, String[] titles, String[] slugs, String[] shortDescriptions,
+		       String[] descriptions) {
+    _types = types;
+    _titles = titles;
+    _slugs = slugs;
+    _shortDescriptions = shortDescriptions;
+    _descriptions = descriptions;
+
+    Map<String, List<int[]>> building = new HashMap<String, List<int[]>>();
+    for (int id = 0; id < titles.length; id++) {
+      Map<String, Integer> flags = new LinkedHashMap<String, Integer>();
+      addTokens(flags, titles[id], IN_TITLE);
+      addTokens(flags, shortDescriptions[id], IN_SHORT_DESCRIPTION);
+      addTokens(flags, descriptions[id], IN_DESCRIPTION);
+      for (Map.Entry<String, Integer> token : flags.entrySet()) {
+	List<int[]> list = building.get(token.getKey());
+	if (list == null) {
+	  list = new ArrayList<int[]>();
+	  building.put(token.getKey(), list);
+	}
+	list.add(new int[] { id, token.getValue() });
+      }
+    }
+
+    _postings = new HashMap<String, int[]>(building.size() * 2);
+    _fields = new HashMap<String, byte[]>(building.size() * 2);
+    for (Map.Entry<String, List<int[]>> token : building.entrySet()) {
+      List<int[]> list = token.getValue();
+      int[] ids = new int[list.size()];
+      byte[] where = new byte[list.size()];
+      for (int i = 0; i < ids.length; i++) {
+	ids[i] = list.get(i)[0];
+	where[i] = (byte) list.get(i)[1];
+      }
+      _postings.put(token.getKey(), ids);
+      _fields.put(token.getKey(), where);
+    }
+  }
+
+  /**
+   * Returns the configured index, or {@code null} when none is available.
+   */
+  public static CatalogIndex getDefault() {
+    if (!_defaultLoaded) {
+      synchronized (CatalogIndex.class) {
+	if (!_defaultLoaded) {
+	  _default = loadDefault();
+	  _defaultLoaded = true;
+	}
+      }
+    }
+    return _default;
+  }
+
+  private static CatalogIndex loadDefault() {
+    String path = LinkedInLearningConfig.getString("linkedinlearning.catalog.path", null);
+    try {
+      if (path != null) {
+	try (InputStream in = new FileInputStream(path)) {
+	  return read(in);
+	}
+      }
+      try (InputStream in = CatalogIndex.class.getResourceAsStream("/catalog.idx")) {
+	return (in == null) ? null : read(in);
+      }
+    } catch (IOException e) {
+      log.error("Unable to load catalog index, searching the Learning API only", e);
+      return null;
+    }
+  }
+
+  public int size() {
+    return _titles.length;
+  }
+
+  /**
+   * Returns up to {@code limit} entries of {@code entityType} (or of any type when it is
+   * {@code null}) that contain every keyword, best first.
+   */
+  public List<Content> search(String entityType, String keywords, int limit) {
+    List<String> tokens = new ArrayList<String>(tokenize(keywords));
+    if (tokens.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // Start from the rarest token so the candidate set is as small as possible.
+    int[][] postings = new int[tokens.size()][];
+    for (int i = 0; i < tokens.size(); i++) {
+      postings[i] = _postings.get(tokens.get(i));
+      if (postings[i] == null) {
+	return Collections.emptyList();
+      }
+    }
+    Integer[] order = new Integer[tokens.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> postings[a].length - postings[b].length);
+
+    int typeFilter = (entityType == null) ? -1 : Arrays.asList(ENTITY_TYPES).indexOf(entityType);
+    if (entityType != null && typeFilter < 0) {
+      return Collections.emptyList();
+    }
+
+    List<double[]> scored = new ArrayList<double[]>();
+    int[] rarest = postings[order[0]];
+    candidates:
+    for (int id : rarest) {
+      if (typeFilter >= 0 && _types[id] != typeFilter) {
+	continue;
+      }
+      double score = 0;
+      for (int i : order) {
+	int at = Arrays.binarySearch(postings[i], id);
+	if (at < 0) {
+	  continue candidates;
+	}
+	score += weight(_fields.get(tokens.get(i))[at]) * Math.log(1.0 + (double) _titles.length / postings[i].length);
+      }
+      scored.add(new double[] { score, id });
+    }
+
+    scored.sort((a, b) -> (a[0] != b[0]) ? Double.compare(b[0], a[0]) : Double.compare(a[1], b[1]));
+
+    List<Content> results = new ArrayList<Content>(Math.min(limit, scored.size()));
+    for (int i = 0; i < scored.size() && i < limit; i++) {
+      results.add(toContent((int) scored.get(i)[1]));
+    }
+    return results;
+  }
+
+  private static double weight(int where) {
+    double weight = 0;
+    if ((where & IN_TITLE) != 0) {
+      weight += 3;
+    }
+    if ((where & IN_SHORT_DESCRIPTION) != 0) {
+      weight += 2;
+    }
+    if ((where & IN_DESCRIPTION) != 0) {
+      weight += 1;
+    }
+    return weight;
+  }
+
+  private Content toContent(int id) {
+    if ("LEARNING_PATH".equals(ENTITY_TYPES[_types[id]])) {
+      return new LearningPath(_titles[id], _slugs[id]);
+    }
+    return new Course(_titles[id], _slugs[id], _descriptions[id], _shortDescriptions[id]);
+  }
+
+  private static void addTokens(Map<String, Integer> flags, String text, int field) {
+    for (String token : tokenize(text)) {
+      Integer current = flags.get(token);
+      flags.put(token, (current == null) ? field : (current | field));
+    }
+  }
+
+  /**
+   * Lower-cases {@code text} and splits it into distinct words, leaving out stop words.
+   */
+  static Set<String> tokenize(String text) {
+    Set<String> tokens = new LinkedHashSet<String>();
+    if (text == null) {
+      return tokens;
+    }
+    StringBuilder token = new StringBuilder();
+    for (int i = 0; i <= text.length(); i++) {
+      char c = (i < text.length()) ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+	token.append(Character.toLowerCase(c));
+      } else if (token.length() > 0) {
+	String word = token.toString();
+	if (!STOP_WORDS.contains(word)) {
+	  tokens.add(word);
+	}
+	token.setLength(0);
+      }
+    }
+    return tokens;
+  }
+
+  public static CatalogIndex read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new GZIPInputStream(new BufferedInputStream(in)));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a catalog index");
+    }
+    int version = data.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported catalog index version " + version);
+    }
+
+    int count = data.readInt();
+    byte[] types = new byte[count];
+    String[] titles = new String[count];
+    String[] slugs = new String[count];
+    String[] shortDescriptions = new String[count];
+    String[] descriptions = new String[count];
+    for (int i = 0; i < count; i++) {
+      types[i] = data.readByte();
+      titles[i] = readString(data);
+      slugs[i] = readString(data);
+      shortDescriptions[i] = readString(data);
+      descriptions[i] = readString(data);
+    }
+    return new CatalogIndex(types, titles, slugs, shortDescriptions, descriptions);
+  }
+
+  public void write(OutputStream out) throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(out));
+    DataOutputStream data = new DataOutputStream(gzip);
+    data.writeInt(MAGIC);
+    data.writeInt(FORMAT_VERSION);
+    data.writeInt(_titles.length);
+    for (int i = 0; i < _titles.length; i++) {
+      data.writeByte(_types[i]);
+      writeString(data, _titles[i]);
+      writeString(data, _slugs[i]);
+      writeString(data, _shortDescriptions[i]);
+      writeString(data, _descriptions[i]);
+    }
+    data.flush();
+    gzip.finish();
+    gzip.flush();
+  }
+
+  private static String readString(DataInputStream data) throws IOException {
+    return data.readBoolean() ? data.readUTF() : null;
+  }
+
+  private static void writeString(DataOutputStream data, String value) throws IOException {
+    data.writeBoolean(value != null);
+    if (value != null) {
+      data.writeUTF(value.length() > MAX_TEXT_LENGTH ? value.substring(0, MAX_TEXT_LENGTH) : value);
+    }
+  }
+
+  /**
+   * Collects catalog entries, keeping the first entry seen for each slug.
+   */
+  public static final class Builder {
+    private final Map<String, Object[]> _entries = new LinkedHashMap<String, Object[]>();
+
+    public Builder add(String entityType, Content content) {
+      int type = Arrays.asList(ENTITY_TYPES).indexOf(entityType);
+      if (type < 0 || content == null || content.slug == null || _entries.containsKey(content.slug)) {
+	return this;
+      }
+      String shortDescription = null;
+      String description = null;
+      if (content instanceof Course) {
+	shortDescription = ((Course) content).shortDescription;
+	description = ((Course) content).description;
+      }
+      _entries.put(content.slug, new Object[] { (byte) type, content.title, content.slug, shortDescription, description });
+      return this;
+    }
+
+    public CatalogIndex build() {
+      int count = _entries.size();
+      byte[] types = new byte[count];
+      String[] titles = new String[count];
+      String[] slugs = new String[count];
+      String[] shortDescriptions = new String[count];
+      String[] descriptions = new String[count];
+      int i = 0;
+      for (Object[] entry : _entries.values()) {
+	types[i] = (Byte) entry[0];
+	titles[i] = (String) entry[1];
+	slugs[i] = (String) entry[2];
+	shortDescriptions[i] = (String) entry[3];
+	descriptions[i] = (String) entry[4];
+	i++;
+      }
+      return new CatalogIndex(types, titles, slugs, shortDescriptions, descriptions);
+    }
+  }
+
+  /**
+   * Builds an index by searching the Learning API for every keyword listed in the given files
+   * (one per line, e.g. the custom slot type lists) and writes it to the output file.
+   *
+   * <p>Usage: {@code CatalogIndex <output file> <keyword file>...}
+   */
+  public static void main(String[] args) throws Exception {
+    Set<String> keywords = new LinkedHashSet<String>();
+    keywords.add("");
+    for (int i = 1; i < args.length; i++) {
+      for (String line : Files.readAllLines(Paths.get(args[i]), StandardCharsets.UTF_8)) {
+	if (!line.trim().isEmpty()) {
+	  keywords.add(line.trim());
+	}
+      }
+    }
+
+    LearningApiTransport transport = PooledHttpTransport.fromConfig();
+    Builder builder = new Builder();
+    for (String keyword : keywords) {
+      for (String entityType : ENTITY_TYPES) {
+	SearchResults results = transport.get("/search?q=search&entityType=" + URLEncoder.encode(entityType, "UTF-8") +
+					      "&keywords=" + URLEncoder.encode(keyword, "UTF-8"),
+					      SearchResultsReader::readFull);
+	for (Content content : summarize(results, entityType)) {
+	  builder.add(entityType, content);
+	}
+      }
+    }
+
+    CatalogIndex index = builder.build();
+    try (OutputStream out = new FileOutputStream(new File(args[0]))) {
+      index.write(out);
+    }
+    System.out.println("Wrote " + index.size() + " entries to " + args[0]);
+  }
+}
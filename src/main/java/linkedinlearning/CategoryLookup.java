@@ -0,0 +1,131 @@
+package linkedinlearning;
+
+/**
+ * Maps spoken category names to Learning API entity types without allocating.
+ *
+ * <p>Names are compared case-insensitively, ignoring whitespace and periods, so "Learning
+ * Paths", "learning paths" and "learningpaths" all match. The names are kept in an
+ * open-addressing table keyed by the hash of their normalized form; a lookup hashes the spoken
+ * value in one pass while skipping the ignored characters, then compares it character by
+ * character against the candidate, never building the normalized string.
+ */
+final class CategoryLookup {
+
+  private final String[] _names;
+  private final String[] _categories;
+
+  /**
+   * Index + 1 into {@link #_names}, 0 for an empty slot.
+   */
+  private final int[] _table;
+
+  private final int _mask;
+
+  /**
+   * @param mappings
+   *            pairs of spoken name and entity type
+   */
+  CategoryLookup(String[][] mappings) {
+    int size = Integer.highestOneBit(Math.max(4, mappings.length * 4) - 1) << 1;
+    _names = new String[mappings.length];
+    _categories = new String[mappings.length];
+    _table = new int[size];
+    _mask = size - 1;
+
+    for (int i = 0; i < mappings.length; i++) {
+      _names[i] = normalize(mappings[i][0]);
+      _categories[i] = mappings[i][1];
+      int slot = spread(hash(_names[i])) & _mask;
+      while (_table[slot] != 0) {
+	slot = (slot + 1) & _mask;
+      }
+      _table[slot] = i + 1;
+    }
+  }
+
+  /**
+   * Returns the entity type for the spoken name, or {@code null} if it is not known.
+   */
+  String lookup(CharSequence spoken) {
+    if (spoken == null) {
+      return null;
+    }
+    int hash = hash(spoken);
+    for (int slot = spread(hash) & _mask; _table[slot] != 0; slot = (slot + 1) & _mask) {
+      int i = _table[slot] - 1;
+      if (matches(spoken, _names[i])) {
+	return _categories[i];
+      }
+    }
+    return null;
+  }
+
+  private static boolean ignored(char c) {
+    return c == '.' || Character.isWhitespace(c);
+  }
+
+  private static int hash(CharSequence s) {
+    int h = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (!ignored(c)) {
+	h = 31 * h + Character.toLowerCase(c);
+      }
+    }
+    return h;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean matches(CharSequence spoken, String name) {
+    int j = 0;
+    for (int i = 0; i < spoken.length(); i++) {
+      char c = spoken.charAt(i);
+      if (ignored(c)) {
+	continue;
+      }
+      if (j == name.length() || Character.toLowerCase(c) != name.charAt(j)) {
+	return false;
+      }
+      j++;
+    }
+    return j == name.length();
+  }
+
+  private static String normalize(String name) {
+    StringBuilder normalized = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!ignored(c)) {
+	normalized.append(Character.toLowerCase(c));
+      }
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * Removes periods and any whitespace following them, e.g. "d. v. d.s" becomes "dvds". Returns
+   * {@code value} itself when it has no periods.
+   */
+  static String stripPeriods(String value) {
+    int period = value.indexOf('.');
+    if (period < 0) {
+      return value;
+    }
+    StringBuilder stripped = new StringBuilder(value.length());
+    stripped.append(value, 0, period);
+    for (int i = period; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '.') {
+	while (i + 1 < value.length() && Character.isWhitespace(value.charAt(i + 1))) {
+	  i++;
+	}
+      } else {
+	stripped.append(c);
+      }
+    }
+    return stripped.toString();
+  }
+}
@@ -0,0 +1,220 @@
+package linkedinlearning;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guards a {@link LearningApiTransport} with a circuit breaker and a bulkhead.
+ *
+ * <p>The outcomes of the last {@code windowSize} calls are kept; once at least
+ * {@code minimumCalls} are recorded and the share of failed or slow calls reaches its threshold
+ * the circuit opens, and for {@code openMillis} calls fail fast with a
+ * {@link LearningApiUnavailableException}. After that a few trial calls are let through: if they
+ * all succeed in time the circuit closes again, otherwise it reopens.
+ *
+ * <p>The bulkhead caps the calls in flight, so a slow API cannot tie up every request thread;
+ * calls beyond the cap wait briefly for a slot and are then rejected the same way.
+ *
+ * <p>{@link #getSpeculative Speculative} calls have a small bulkhead of their own and do not
+ * wait for a slot. They are only made while the circuit is closed and their outcomes are not
+ * recorded, so a prefetch that is aborted or outlives a frozen Lambda container cannot open the
+ * circuit.
+ */
+public class CircuitBreakingTransport implements LearningApiTransport {
+  private static final Logger log = LoggerFactory.getLogger(CircuitBreakingTransport.class);
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final LearningApiTransport _delegate;
+  private final Semaphore _bulkhead;
+  private final long _bulkheadWaitMillis;
+  private final Semaphore _speculativeBulkhead;
+  private final int _minimumCalls;
+  private final int _failureRatePercent;
+  private final long _slowCallNanos;
+  private final int _slowCallRatePercent;
+  private final long _openMillis;
+  private final int _halfOpenCalls;
+
+  // Ring buffer of the latest outcomes, guarded by this.
+  private final boolean[] _failed;
+  private final boolean[] _slow;
+  private int _next;
+  private int _recorded;
+  private int _failures;
+  private int _slowCalls;
+
+  private State _state = State.CLOSED;
+  private long _openedAt;
+  private int _trialPermits;
+  private int _trialSuccesses;
+
+  public CircuitBreakingTransport(LearningApiTransport delegate, int maxConcurrentCalls, long bulkheadWaitMillis,
+				  int maxSpeculativeCalls, int windowSize, int minimumCalls, int failureRatePercent, long slowCallMillis,
+				  int slowCallRatePercent, long openMillis, int halfOpenCalls) {
+    _delegate = delegate;
+    _bulkhead = new Semaphore(maxConcurrentCalls);
+    _bulkheadWaitMillis = bulkheadWaitMillis;
+    _speculativeBulkhead = new Semaphore(maxSpeculativeCalls);
+    _minimumCalls = Math.min(minimumCalls, windowSize);
+    _failureRatePercent = failureRatePercent;
+    _slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    _slowCallRatePercent = slowCallRatePercent;
+    _openMillis = openMillis;
+    _halfOpenCalls = Math.max(1, halfOpenCalls);
+    _failed = new boolean[windowSize];
+    _slow = new boolean[windowSize];
+  }
+
+  /**
+   * Wraps {@code delegate} as configured by the {@code linkedinlearning.api.breaker.*} and
+   * bulkhead settings, or returns it unchanged if the breaker is disabled.
+   */
+  public static LearningApiTransport fromConfig(LearningApiTransport delegate) {
+    if (!LinkedInLearningConfig.getBoolean("linkedinlearning.api.breaker.enabled", true)) {
+      return delegate;
+    }
+    return new CircuitBreakingTransport(
+      delegate,
+      LinkedInLearningConfig.getInt("linkedinlearning.api.maxConcurrentCalls", 20),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.bulkheadWaitMillis", 100L),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.maxSpeculativeCalls", 4),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.breaker.windowSize", 20),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.breaker.minimumCalls", 10),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.breaker.failureRatePercent", 50),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.breaker.slowCallMillis", 2000L),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.breaker.slowCallRatePercent", 80),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.breaker.openMillis", 30 * 1000L),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.breaker.halfOpenCalls", 3));
+  }
+
+  public synchronized State getState() {
+    return _state;
+  }
+
+  @Override
+  public <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException {
+    try {
+      if (!_bulkhead.tryAcquire(_bulkheadWaitMillis, TimeUnit.MILLISECONDS)) {
+	throw new LearningApiUnavailableException("Too many Learning API calls in flight, not calling " + pathAndQuery);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to call " + pathAndQuery);
+    }
+
+    try {
+      if (!acquirePermission()) {
+	throw new LearningApiUnavailableException("Learning API circuit is open, not calling " + pathAndQuery);
+      }
+
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+	T result = _delegate.get(pathAndQuery, parser);
+	failed = false;
+	return result;
+      } finally {
+	record(failed, System.nanoTime() - start);
+      }
+    } finally {
+      _bulkhead.release();
+    }
+  }
+
+  @Override
+  public <T> T getSpeculative(String pathAndQuery, ResponseParser<T> parser, Consumer<Runnable> abortHook)
+    throws IOException {
+    if (!_speculativeBulkhead.tryAcquire()) {
+      throw new LearningApiUnavailableException("Too many speculative Learning API calls in flight, not calling "
+						+ pathAndQuery);
+    }
+    try {
+      if (getState() != State.CLOSED) {
+	throw new LearningApiUnavailableException("Learning API circuit is not closed, not calling " + pathAndQuery);
+      }
+      return _delegate.getSpeculative(pathAndQuery, parser, abortHook);
+    } finally {
+      _speculativeBulkhead.release();
+    }
+  }
+
+  private synchronized boolean acquirePermission() {
+    if (_state == State.CLOSED) {
+      return true;
+    }
+    if (_state == State.OPEN) {
+      if (System.currentTimeMillis() - _openedAt < _openMillis) {
+	return false;
+      }
+      _state = State.HALF_OPEN;
+      _trialPermits = _halfOpenCalls;
+      _trialSuccesses = 0;
+      log.info("Learning API circuit half-open, trying {} calls", _halfOpenCalls);
+    }
+    if (_trialPermits == 0) {
+      return false;
+    }
+    _trialPermits--;
+    return true;
+  }
+
+  private synchronized void record(boolean failed, long elapsedNanos) {
+    boolean slow = elapsedNanos >= _slowCallNanos;
+    if (_state == State.HALF_OPEN) {
+      if (failed || slow) {
+	open(failed ? "trial call failed" : "trial call was slow");
+      } else if (++_trialSuccesses == _halfOpenCalls) {
+	close();
+      }
+      return;
+    }
+    if (_state == State.OPEN) {
+      // Let through before the circuit opened; it has no say any more.
+      return;
+    }
+
+    if (_recorded == _failed.length) {
+      _failures -= _failed[_next] ? 1 : 0;
+      _slowCalls -= _slow[_next] ? 1 : 0;
+    } else {
+      _recorded++;
+    }
+    _failed[_next] = failed;
+    _slow[_next] = slow;
+    _failures += failed ? 1 : 0;
+    _slowCalls += slow ? 1 : 0;
+    _next = (_next + 1) % _failed.length;
+
+    if (_recorded >= _minimumCalls
+	&& (_failures * 100 >= _failureRatePercent * _recorded || _slowCalls * 100 >= _slowCallRatePercent * _recorded)) {
+      open("failures=" + _failures + " slowCalls=" + _slowCalls + " of calls=" + _recorded);
+    }
+  }
+
+  private void open(String reason) {
+    log.warn("Opening Learning API circuit for {}ms, {}", _openMillis, reason);
+    _state = State.OPEN;
+    _openedAt = System.currentTimeMillis();
+    resetWindow();
+  }
+
+  private void close() {
+    log.info("Closing Learning API circuit");
+    _state = State.CLOSED;
+    resetWindow();
+  }
+
+  private void resetWindow() {
+    _next = 0;
+    _recorded = 0;
+    _failures = 0;
+    _slowCalls = 0;
+  }
+}
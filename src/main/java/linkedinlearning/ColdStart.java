@@ -0,0 +1,48 @@
+package linkedinlearning;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Runs a cold start of the Lambda handler in a fresh JVM: the handler's initialization, as in
+ * Lambda's init phase, then the first request, a launch request unless envelope files are given.
+ * Prints the time from JVM start to initialization, of initialization, of the first request and
+ * from JVM start to the first response.
+ *
+ * <p>This is also the training run the AppCDS archive is dumped from, see the README. That run
+ * turns off the startup work that goes over the network: DynamoDB priming, popular snapshots
+ * and search cache warming.
+ */
+public final class ColdStart {
+
+  private ColdStart() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    long initStart = System.currentTimeMillis();
+    LinkedInLearningSpeechletRequestStreamHandler handler = new LinkedInLearningSpeechletRequestStreamHandler();
+    long initEnd = System.currentTimeMillis();
+
+    long firstEnd = 0;
+    if (args.length == 0) {
+      handler.handleRequest(new ByteArrayInputStream(LinkedInLearningSpeechletRequestStreamHandler.launchRequest()),
+			    new ByteArrayOutputStream(), null);
+      firstEnd = System.currentTimeMillis();
+    }
+    for (String file : args) {
+      handler.handleRequest(new ByteArrayInputStream(Files.readAllBytes(Paths.get(file))), new ByteArrayOutputStream(),
+			    null);
+      if (firstEnd == 0) {
+	firstEnd = System.currentTimeMillis();
+      }
+    }
+
+    long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    System.out.printf("jvmStartMillis=%d initMillis=%d firstRequestMillis=%d timeToFirstResponseMillis=%d%n",
+		      initStart - jvmStart, initEnd - initStart, firstEnd - initEnd, firstEnd - jvmStart);
+    System.exit(0);
+  }
+}
@@ -0,0 +1,270 @@
+package linkedinlearning;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cuts the latency tail of a {@link LearningApiTransport} with hedged requests and adaptive
+ * deadlines, both derived from a rolling {@link LatencyHistogram} per endpoint ({@code /search},
+ * {@code /detailedCourses}).
+ *
+ * <p>The call is made on the caller's thread. If it has not answered after the endpoint's
+ * {@code hedge.percentile} latency, a duplicate is sent from a background thread; whichever
+ * answers first is returned and the other is aborted. Hedges are paid for from a budget of
+ * {@code hedge.budgetPercent} hedges per hundred calls, so a slow API does not see twice the
+ * load.
+ *
+ * <p>Each call is aborted after the endpoint's {@code deadline.percentile} latency times
+ * {@code deadline.multiplier}, kept between {@code deadline.minMillis} and
+ * {@code deadline.maxMillis}. Until an endpoint has {@code latency.minSamples} samples, calls are
+ * not hedged and get the maximum deadline.
+ *
+ * <p>{@link #getSpeculative Speculative} calls are passed straight through: they are neither
+ * hedged nor recorded, so calls nobody waits on cannot move the deadlines of those that are.
+ */
+public class HedgingTransport implements LearningApiTransport {
+  private static final Logger log = LoggerFactory.getLogger(HedgingTransport.class);
+
+  private static final ScheduledExecutorService HEDGE_TIMERS =
+    Executors.newSingleThreadScheduledExecutor(r -> {
+	Thread t = new Thread(r, "learning-api-hedge-timer");
+	t.setDaemon(true);
+	return t;
+      });
+
+  private static final ExecutorService HEDGES = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger _count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+	Thread t = new Thread(r, "learning-api-hedge-" + _count.incrementAndGet());
+	t.setDaemon(true);
+	return t;
+      }
+    });
+
+  /**
+   * Hedges that may be saved up while the API is fast, so a burst of slow calls can still be
+   * hedged.
+   */
+  private static final double MAX_HEDGE_TOKENS = 10.0;
+
+  private final LearningApiTransport _delegate;
+  private final boolean _hedge;
+  private final double _hedgePercentile;
+  private final long _minHedgeDelayMillis;
+  private final double _hedgeTokensPerCall;
+  private final double _deadlinePercentile;
+  private final int _deadlineMultiplier;
+  private final long _minDeadlineMillis;
+  private final long _maxDeadlineMillis;
+  private final long _windowMillis;
+  private final long _minSamples;
+
+  private final ConcurrentMap<String, LatencyHistogram> _latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+  private double _hedgeTokens = MAX_HEDGE_TOKENS;
+
+  public HedgingTransport(LearningApiTransport delegate, boolean hedge, int hedgePercentile, long minHedgeDelayMillis,
+			  int hedgeBudgetPercent, int deadlinePercentile, int deadlineMultiplier, long minDeadlineMillis,
+			  long maxDeadlineMillis, long windowMillis, long minSamples) {
+    _delegate = delegate;
+    _hedge = hedge;
+    _hedgePercentile = hedgePercentile / 100.0;
+    _minHedgeDelayMillis = minHedgeDelayMillis;
+    _hedgeTokensPerCall = hedgeBudgetPercent / 100.0;
+    _deadlinePercentile = deadlinePercentile / 100.0;
+    _deadlineMultiplier = deadlineMultiplier;
+    _minDeadlineMillis = minDeadlineMillis;
+    _maxDeadlineMillis = maxDeadlineMillis;
+    _windowMillis = windowMillis;
+    _minSamples = minSamples;
+  }
+
+  /**
+   * Wraps {@code delegate} as configured by the {@code linkedinlearning.api.hedge.*},
+   * {@code deadline.*} and {@code latency.*} settings. The maximum deadline defaults to
+   * {@code linkedinlearning.api.totalTimeoutMillis}.
+   */
+  public static HedgingTransport fromConfig(LearningApiTransport delegate) {
+    long totalTimeoutMillis = LinkedInLearningConfig.getLong("linkedinlearning.api.totalTimeoutMillis", 3000L);
+    return new HedgingTransport(
+      delegate,
+      LinkedInLearningConfig.getBoolean("linkedinlearning.api.hedge.enabled", true),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.hedge.percentile", 95),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.hedge.minDelayMillis", 50L),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.hedge.budgetPercent", 5),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.deadline.percentile", 99),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.deadline.multiplier", 3),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.deadline.minMillis", 1000L),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.deadline.maxMillis", totalTimeoutMillis),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.latency.windowMillis", 60 * 1000L),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.latency.minSamples", 50L));
+  }
+
+  /**
+   * Returns the latencies of the endpoint, e.g. {@code /search}, creating the histogram if
+   * needed.
+   */
+  public LatencyHistogram getLatencies(String endpoint) {
+    LatencyHistogram latencies = _latencies.get(endpoint);
+    if (latencies == null) {
+      _latencies.putIfAbsent(endpoint, new LatencyHistogram(_windowMillis));
+      latencies = _latencies.get(endpoint);
+    }
+    return latencies;
+  }
+
+  @Override
+  public <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException {
+    int query = pathAndQuery.indexOf('?');
+    LatencyHistogram latencies = getLatencies((query < 0) ? pathAndQuery : pathAndQuery.substring(0, query));
+
+    long start = System.currentTimeMillis();
+    long deadlineMillis = _maxDeadlineMillis;
+    long hedgeDelayMillis = -1;
+    if (latencies.getCount() >= _minSamples) {
+      deadlineMillis = clamp(latencies.getPercentile(_deadlinePercentile) * _deadlineMultiplier, _minDeadlineMillis,
+			     _maxDeadlineMillis);
+      if (_hedge) {
+	hedgeDelayMillis = Math.max(_minHedgeDelayMillis, latencies.getPercentile(_hedgePercentile));
+      }
+    }
+    earnHedgeToken();
+
+    AtomicBoolean done = new AtomicBoolean();
+    // Set before the hedge is handed to its thread; the timer's future only completes after that,
+    // possibly after the hedge has already answered and aborted this attempt.
+    AtomicBoolean hedgeSent = new AtomicBoolean();
+    AtomicReference<Runnable> abortPrimary = new AtomicReference<Runnable>();
+    AtomicReference<Runnable> abortHedge = new AtomicReference<Runnable>();
+    CompletableFuture<T> hedged = new CompletableFuture<T>();
+    ScheduledFuture<?> hedgeTimer = null;
+    if (hedgeDelayMillis >= 0 && hedgeDelayMillis < deadlineMillis) {
+      long deadline = start + deadlineMillis;
+      hedgeTimer = HEDGE_TIMERS.schedule(() -> startHedge(pathAndQuery, parser, latencies, deadline, done, hedgeSent,
+							  abortPrimary, abortHedge, hedged),
+					 hedgeDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    try {
+      T result = _delegate.get(pathAndQuery, parser, deadlineMillis, abortPrimary::set);
+      done.set(true);
+      latencies.record(System.currentTimeMillis() - start);
+      abort(abortHedge);
+      return result;
+    } catch (IOException | RuntimeException e) {
+      if (hedgeSent.get() && !hedged.isCancelled()) {
+	// The hedge was sent: this attempt failed or was aborted because the hedge answered.
+	return awaitHedge(hedged, start + deadlineMillis, e, pathAndQuery);
+      }
+      done.set(true);
+      long elapsedMillis = System.currentTimeMillis() - start;
+      if (elapsedMillis >= deadlineMillis) {
+	// A call that ran out of time still says how slow the endpoint is.
+	latencies.record(elapsedMillis);
+      }
+      throw e;
+    } finally {
+      done.set(true);
+      if (hedgeTimer != null) {
+	hedgeTimer.cancel(false);
+      }
+    }
+  }
+
+  @Override
+  public <T> T getSpeculative(String pathAndQuery, ResponseParser<T> parser, Consumer<Runnable> abortHook)
+    throws IOException {
+    return _delegate.getSpeculative(pathAndQuery, parser, abortHook);
+  }
+
+  private <T> void startHedge(String pathAndQuery, ResponseParser<T> parser, LatencyHistogram latencies, long deadline,
+			      AtomicBoolean done, AtomicBoolean hedgeSent, AtomicReference<Runnable> abortPrimary,
+			      AtomicReference<Runnable> abortHedge, CompletableFuture<T> hedged) {
+    if (done.get() || !spendHedgeToken()) {
+      hedged.cancel(false);
+      return;
+    }
+    hedgeSent.set(true);
+    try {
+      HEDGES.execute(() -> {
+	  long start = System.currentTimeMillis();
+	  try {
+	    if (done.get()) {
+	      hedged.cancel(false);
+	      return;
+	    }
+	    T result = _delegate.get(pathAndQuery, parser, Math.max(1L, deadline - start), abortHedge::set);
+	    latencies.record(System.currentTimeMillis() - start);
+	    hedged.complete(result);
+	    abort(abortPrimary);
+	  } catch (Throwable e) {
+	    hedged.completeExceptionally(e);
+	  }
+	});
+      log.debug("Hedged {}", pathAndQuery);
+    } catch (RejectedExecutionException e) {
+      hedged.cancel(false);
+    }
+  }
+
+  private <T> T awaitHedge(CompletableFuture<T> hedged, long deadline, Exception primaryFailure, String pathAndQuery)
+    throws IOException {
+    try {
+      return hedged.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for hedged call to " + pathAndQuery);
+    } catch (ExecutionException | TimeoutException | CancellationException e) {
+      // Neither attempt answered: report why the first one failed.
+      if (primaryFailure instanceof IOException) {
+	throw (IOException) primaryFailure;
+      }
+      throw (RuntimeException) primaryFailure;
+    }
+  }
+
+  private static void abort(AtomicReference<Runnable> abort) {
+    Runnable action = abort.get();
+    if (action != null) {
+      action.run();
+    }
+  }
+
+  private synchronized void earnHedgeToken() {
+    _hedgeTokens = Math.min(MAX_HEDGE_TOKENS, _hedgeTokens + _hedgeTokensPerCall);
+  }
+
+  private synchronized boolean spendHedgeToken() {
+    if (_hedgeTokens < 1.0) {
+      return false;
+    }
+    _hedgeTokens -= 1.0;
+    return true;
+  }
+
+  private static long clamp(long value, long min, long max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
@@ -0,0 +1,111 @@
+package linkedinlearning;
+
+import java.util.Arrays;
+
+/**
+ * A rolling histogram of latencies, e.g. in milliseconds. Values are counted in log-linear
+ * buckets (exact up to 16, then eight buckets per power of two, so within 12.5%) and percentiles
+ * are computed over the current and the previous window, so old samples age out after one to two
+ * windows.
+ */
+public final class LatencyHistogram {
+
+  private static final int LINEAR_BUCKETS = 16;
+
+  private static final int SUB_BUCKETS = 8;
+
+  /**
+   * Values above this, over a day in milliseconds or two minutes in microseconds, are counted as
+   * this.
+   */
+  private static final long MAX_VALUE = (1L << 27) - 1;
+
+  private static final int BUCKETS = bucket(MAX_VALUE) + 1;
+
+  private final long _windowMillis;
+
+  private long[] _current = new long[BUCKETS];
+  private long[] _previous = new long[BUCKETS];
+  private long _currentCount;
+  private long _previousCount;
+  private long _currentStart;
+
+  public LatencyHistogram(long windowMillis) {
+    _windowMillis = windowMillis;
+    _currentStart = System.currentTimeMillis();
+  }
+
+  public synchronized void record(long value) {
+    rotate();
+    _current[bucket(Math.max(0L, Math.min(value, MAX_VALUE)))]++;
+    _currentCount++;
+  }
+
+  /**
+   * Returns the number of values in the current and the previous window.
+   */
+  public synchronized long getCount() {
+    rotate();
+    return _currentCount + _previousCount;
+  }
+
+  /**
+   * Returns the upper bound of the bucket holding the given percentile, e.g. 0.99, of the values
+   * in the current and the previous window, or 0 if there are none.
+   */
+  public synchronized long getPercentile(double percentile) {
+    rotate();
+    long count = _currentCount + _previousCount;
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += _current[i] + _previous[i];
+      if (seen >= rank) {
+	return upperBound(i);
+      }
+    }
+    return MAX_VALUE;
+  }
+
+  private void rotate() {
+    long now = System.currentTimeMillis();
+    if (now - _currentStart < _windowMillis) {
+      return;
+    }
+    long[] recycled = _previous;
+    Arrays.fill(recycled, 0L);
+    if (now - _currentStart < 2 * _windowMillis) {
+      _previous = _current;
+      _previousCount = _currentCount;
+    } else {
+      // Idle for more than a window: everything recorded is too old.
+      Arrays.fill(_current, 0L);
+      _previous = _current;
+      _previousCount = 0;
+    }
+    _current = recycled;
+    _currentCount = 0;
+    _currentStart = now;
+  }
+
+  static int bucket(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+    int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+  }
+}
@@ -0,0 +1,43 @@
+package linkedinlearning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Issues GET requests against the Learning API. The path and query are relative to the
+ * transport's base URL so an implementation can be pointed at a local stub.
+ */
+public interface LearningApiTransport {
+
+  /**
+   * Parses a response body. The stream is closed by the transport once the parser returns.
+   */
+  interface ResponseParser<T> {
+    T parse(InputStream body) throws IOException;
+  }
+
+  <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException;
+
+  /**
+   * Like {@link #get(String, ResponseParser)}, but gives up after {@code timeoutMillis} instead
+   * of the transport's own deadline, and hands {@code abortHook} a callback that aborts the
+   * request from another thread, e.g. once a hedged duplicate has answered. Transports that
+   * cannot abort requests just make the call.
+   */
+  default <T> T get(String pathAndQuery, ResponseParser<T> parser, long timeoutMillis, Consumer<Runnable> abortHook)
+    throws IOException {
+    return get(pathAndQuery, parser);
+  }
+
+  /**
+   * Makes a call whose result is only wanted ahead of time, e.g. a playback url prefetch. Such
+   * calls must not take capacity from, or count towards the statistics of, the calls requests
+   * are waiting on, and may be refused. {@code abortHook} is handed a callback that aborts the
+   * request, as for {@link #get(String, ResponseParser, long, Consumer)}.
+   */
+  default <T> T getSpeculative(String pathAndQuery, ResponseParser<T> parser, Consumer<Runnable> abortHook)
+    throws IOException {
+    return get(pathAndQuery, parser);
+  }
+}
@@ -0,0 +1,20 @@
+package linkedinlearning;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling the Learning API when it is known to be failing or already has as
+ * many calls in flight as allowed. Callers answer from stale data or with an apology rather than
+ * failing the request.
+ */
+public class LearningApiUnavailableException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  public LearningApiUnavailableException(String message) {
+    super(message);
+  }
+
+  public LearningApiUnavailableException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -1,34 +1,164 @@
 package linkedinlearning;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import linkedinlearning.cache.ExpiringLruCache;
+import linkedinlearning.metrics.RequestMetrics;
 
 import java.io.IOException;
-import java.net.URL;
+import java.io.InterruptedIOException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
-import javax.net.ssl.HttpsURLConnection;
 
 public class LinkedInLearningApiHelper {
+  private static final Logger log = LoggerFactory.getLogger(LinkedInLearningApiHelper.class);
+
+  private static volatile LearningApiTransport _transport =
+    CircuitBreakingTransport.fromConfig(HedgingTransport.fromConfig(PooledHttpTransport.fromConfig()));
+
+  /**
+   * Summarized search results keyed by {@link #searchKey(String, String)}, shared across warm
+   * invocations.
+   */
+  private static final ExpiringLruCache<String, List<Content>> SEARCH_CACHE =
+    new ExpiringLruCache<String, List<Content>>("search",
+						LinkedInLearningConfig.getInt("linkedinlearning.cache.search.maxSize", 500),
+						LinkedInLearningConfig.getLong("linkedinlearning.cache.search.ttlMillis", 15 * 60 * 1000L));
+
+  /**
+   * Playback urls keyed by course slug. Entries live until shortly before the url's
+   * {@code expiresAt}.
+   */
+  private static final long PLAYBACK_DEFAULT_TTL_MILLIS =
+    LinkedInLearningConfig.getLong("linkedinlearning.cache.playback.ttlMillis", 10 * 60 * 1000L);
+
+  private static final ExpiringLruCache<String, Url> PLAYBACK_CACHE =
+    new ExpiringLruCache<String, Url>("playback",
+				      LinkedInLearningConfig.getInt("linkedinlearning.cache.playback.maxSize", 1000),
+				      PLAYBACK_DEFAULT_TTL_MILLIS);
+
+  private static final long PLAYBACK_EXPIRY_MARGIN_MILLIS =
+    LinkedInLearningConfig.getLong("linkedinlearning.cache.playback.expiryMarginMillis", 60 * 1000L);
+
+  private static final long PLAYBACK_REFRESH_AHEAD_MILLIS =
+    LinkedInLearningConfig.getLong("linkedinlearning.cache.playback.refreshAheadMillis", 5 * 60 * 1000L);
+
+  private static final long PLAYBACK_AWAIT_MILLIS =
+    LinkedInLearningConfig.getLong("linkedinlearning.api.totalTimeoutMillis", 3000L);
+
+  /**
+   * Background playback url fetches (refreshes and prefetches) that have not finished yet.
+   */
+  private static final ConcurrentMap<String, Future<Url>> PLAYBACK_FETCHES = new ConcurrentHashMap<String, Future<Url>>();
+
+  /**
+   * Callbacks aborting the background playback url fetches that are waiting on the Learning API,
+   * see {@link #awaitBackgroundCalls(long)}.
+   */
+  private static final Set<Runnable> BACKGROUND_ABORTS = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The entity types searched by {@link #searchAll(String)}, in tie-break order.
+   */
+  private static final String[] ENTITY_TYPES = { "COURSE", "VIDEO", "LEARNING_PATH" };
+
+  private static final long FAN_OUT_DEADLINE_MILLIS =
+    LinkedInLearningConfig.getLong("linkedinlearning.api.fanOutDeadlineMillis", 2500L);
+
+  /**
+   * Runs background work such as playback url refreshes and fan-out searches.
+   */
+  private static final ExecutorService _executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger _count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+	Thread t = new Thread(r, "learning-api-" + _count.incrementAndGet());
+	t.setDaemon(true);
+	return t;
+      }
+    });
+
+  /**
+   * Runs {@code task} on the shared background executor.
+   */
+  static void submit(Runnable task) {
+    _executor.execute(task);
+  }
+
+  /**
+   * Replaces the transport used for all Learning API calls, e.g. with a stub for local runs.
+   */
+  public static void setTransport(LearningApiTransport transport) {
+    _transport = transport;
+  }
 
+  /**
+   * A course, video's course or learning path as the skill presents it. Immutable, so instances
+   * can be shared through the caches; equal when of the same class with equal fields.
+   */
   @JsonInclude(Include.NON_NULL)
   @JsonIgnoreProperties(ignoreUnknown = true)
   public static class Content {
     
     @JsonProperty("title")
-    public String title;
+    public final String title;
     
     @JsonProperty("slug")
-    public String slug;
+    public final String slug;
+
+    @JsonCreator
+    public Content(@JsonProperty("title") String title, @JsonProperty("slug") String slug) {
+      this.title = title;
+      this.slug = slug;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+	return true;
+      }
+      if (o == null || o.getClass() != getClass()) {
+	return false;
+      }
+      Content other = (Content) o;
+      return Objects.equals(title, other.title) && Objects.equals(slug, other.slug);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Objects.hashCode(title) + Objects.hashCode(slug);
+    }
 
     @Override
     public String toString() {
-      return ToStringBuilder.reflectionToString(this);
+      return getClass().getSimpleName() + "{title=" + title + ", slug=" + slug + "}";
     }
   }    
 
@@ -37,17 +167,42 @@ public class LinkedInLearningApiHelper {
   static class Paging {
     
     @JsonProperty("start")
-    private Long start;
+    final Long start;
 
     @JsonProperty("count")
-    private Long count;
+    final Long count;
 
     @JsonProperty("total")
-    private Long total;
+    final Long total;
+
+    @JsonCreator
+    Paging(@JsonProperty("start") Long start, @JsonProperty("count") Long count, @JsonProperty("total") Long total) {
+      this.start = start;
+      this.count = count;
+      this.total = total;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+	return true;
+      }
+      if (!(o instanceof Paging)) {
+	return false;
+      }
+      Paging other = (Paging) o;
+      return Objects.equals(start, other.start) && Objects.equals(count, other.count)
+	&& Objects.equals(total, other.total);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Objects.hashCode(start) + Objects.hashCode(count)) + Objects.hashCode(total);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "Paging{start=" + start + ", count=" + count + ", total=" + total + "}";
     }
   }
 
@@ -55,26 +210,60 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class Course extends Content {
     @JsonProperty("description")
-    String description;
+    final String description;
 
     @JsonProperty("shortDescription")
-    String shortDescription;
+    final String shortDescription;
+
+    @JsonCreator
+    Course(@JsonProperty("title") String title, @JsonProperty("slug") String slug,
+	   @JsonProperty("description") String description, @JsonProperty("shortDescription") String shortDescription) {
+      super(title, slug);
+      this.description = description;
+      this.shortDescription = shortDescription;
+    }
 
     @Override
-    public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+    public boolean equals(Object o) {
+      if (!super.equals(o)) {
+	return false;
+      }
+      Course other = (Course) o;
+      return Objects.equals(description, other.description) && Objects.equals(shortDescription, other.shortDescription);
     }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * super.hashCode() + Objects.hashCode(description)) + Objects.hashCode(shortDescription);
+    }
+
+    // toString leaves out the descriptions, which can run to paragraphs.
   }
 
   @JsonInclude(Include.NON_NULL)
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class SearchCourse {
     @JsonProperty("course")
-    Course course;
+    final Course course;
+
+    @JsonCreator
+    SearchCourse(@JsonProperty("course") Course course) {
+      this.course = course;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof SearchCourse) && Objects.equals(course, ((SearchCourse) o).course);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(course);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "SearchCourse{course=" + course + "}";
     }
   }
 
@@ -82,11 +271,26 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class Video {
     @JsonProperty("course")
-    Course course;
+    final Course course;
+
+    @JsonCreator
+    Video(@JsonProperty("course") Course course) {
+      this.course = course;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof Video) && Objects.equals(course, ((Video) o).course);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(course);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "Video{course=" + course + "}";
     }
   }
 
@@ -94,20 +298,35 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class SearchVideo {
     @JsonProperty("video")
-    Video video;
+    final Video video;
+
+    @JsonCreator
+    SearchVideo(@JsonProperty("video") Video video) {
+      this.video = video;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof SearchVideo) && Objects.equals(video, ((SearchVideo) o).video);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(video);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "SearchVideo{video=" + video + "}";
     }
   }
 
   @JsonInclude(Include.NON_NULL)
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class LearningPath extends Content {
-    @Override
-    public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+    @JsonCreator
+    LearningPath(@JsonProperty("title") String title, @JsonProperty("slug") String slug) {
+      super(title, slug);
     }
   }
 
@@ -115,11 +334,26 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class SearchLearningPath {
     @JsonProperty("learningPath")
-    LearningPath learningPath;
+    final LearningPath learningPath;
+
+    @JsonCreator
+    SearchLearningPath(@JsonProperty("learningPath") LearningPath learningPath) {
+      this.learningPath = learningPath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof SearchLearningPath) && Objects.equals(learningPath, ((SearchLearningPath) o).learningPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(learningPath);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "SearchLearningPath{learningPath=" + learningPath + "}";
     }
   }
 
@@ -127,17 +361,47 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class HitInfo {
     @JsonProperty("com.linkedin.learning.api.search.SearchCourse")
-    SearchCourse searchCourse;
+    final SearchCourse searchCourse;
 
     @JsonProperty("com.linkedin.learning.api.search.SearchVideo")
-    SearchVideo searchVideo;
+    final SearchVideo searchVideo;
 
     @JsonProperty("com.linkedin.learning.api.search.SearchLearningPath")
-    SearchLearningPath searchLearningPath;
+    final SearchLearningPath searchLearningPath;
+
+    @JsonCreator
+    HitInfo(@JsonProperty("com.linkedin.learning.api.search.SearchCourse") SearchCourse searchCourse,
+	    @JsonProperty("com.linkedin.learning.api.search.SearchVideo") SearchVideo searchVideo,
+	    @JsonProperty("com.linkedin.learning.api.search.SearchLearningPath") SearchLearningPath searchLearningPath) {
+      this.searchCourse = searchCourse;
+      this.searchVideo = searchVideo;
+      this.searchLearningPath = searchLearningPath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+	return true;
+      }
+      if (!(o instanceof HitInfo)) {
+	return false;
+      }
+      HitInfo other = (HitInfo) o;
+      return Objects.equals(searchCourse, other.searchCourse) && Objects.equals(searchVideo, other.searchVideo)
+	&& Objects.equals(searchLearningPath, other.searchLearningPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Objects.hashCode(searchCourse) + Objects.hashCode(searchVideo))
+	+ Objects.hashCode(searchLearningPath);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      // Only one of the three is set.
+      Object hit = (searchCourse != null) ? searchCourse : (searchVideo != null) ? searchVideo : searchLearningPath;
+      return "HitInfo{" + hit + "}";
     }
   }
   
@@ -145,11 +409,26 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class SelectedVideo {
     @JsonProperty("url")
-    Url url;
+    final Url url;
+
+    @JsonCreator
+    SelectedVideo(@JsonProperty("url") Url url) {
+      this.url = url;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof SelectedVideo) && Objects.equals(url, ((SelectedVideo) o).url);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(url);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "SelectedVideo{url=" + url + "}";
     }
   }
   
@@ -157,17 +436,50 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class Url {
     @JsonProperty("progressiveUrl")
-    String progressiveUrl;
+    final String progressiveUrl;
 
     @JsonProperty("streamingUrl")
-    String streamingUrl;
+    final String streamingUrl;
 
     @JsonProperty("expiresAt")
-    Long expiresAt;
+    final Long expiresAt;
+
+    @JsonCreator
+    Url(@JsonProperty("progressiveUrl") String progressiveUrl, @JsonProperty("streamingUrl") String streamingUrl,
+	@JsonProperty("expiresAt") Long expiresAt) {
+      this.progressiveUrl = progressiveUrl;
+      this.streamingUrl = streamingUrl;
+      this.expiresAt = expiresAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+	return true;
+      }
+      if (!(o instanceof Url)) {
+	return false;
+      }
+      Url other = (Url) o;
+      return Objects.equals(progressiveUrl, other.progressiveUrl) && Objects.equals(streamingUrl, other.streamingUrl)
+	&& Objects.equals(expiresAt, other.expiresAt);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Objects.hashCode(progressiveUrl) + Objects.hashCode(streamingUrl)) + Objects.hashCode(expiresAt);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      // The urls are signed; their query strings are noise in logs.
+      return "Url{progressiveUrl=" + withoutQuery(progressiveUrl) + ", streamingUrl=" + withoutQuery(streamingUrl)
+	+ ", expiresAt=" + expiresAt + "}";
+    }
+
+    private static String withoutQuery(String url) {
+      int query = (url == null) ? -1 : url.indexOf('?');
+      return (query < 0) ? url : url.substring(0, query);
     }
   }
 
@@ -175,17 +487,43 @@ public class LinkedInLearningApiHelper {
   @JsonIgnoreProperties(ignoreUnknown = true)
   static class Element {
     @JsonProperty("trackingId")
-    String trackingId;
+    final String trackingId;
 
     @JsonProperty("hitInfo")
-    HitInfo hitInfo;
+    final HitInfo hitInfo;
 
     @JsonProperty("selectedVideo")
-    SelectedVideo selectedVideo;
+    final SelectedVideo selectedVideo;
+
+    @JsonCreator
+    Element(@JsonProperty("trackingId") String trackingId, @JsonProperty("hitInfo") HitInfo hitInfo,
+	    @JsonProperty("selectedVideo") SelectedVideo selectedVideo) {
+      this.trackingId = trackingId;
+      this.hitInfo = hitInfo;
+      this.selectedVideo = selectedVideo;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+	return true;
+      }
+      if (!(o instanceof Element)) {
+	return false;
+      }
+      Element other = (Element) o;
+      return Objects.equals(trackingId, other.trackingId) && Objects.equals(hitInfo, other.hitInfo)
+	&& Objects.equals(selectedVideo, other.selectedVideo);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Objects.hashCode(trackingId) + Objects.hashCode(hitInfo)) + Objects.hashCode(selectedVideo);
+    }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "Element{hitInfo=" + hitInfo + ", selectedVideo=" + selectedVideo + "}";
     }
   }
 
@@ -194,29 +532,86 @@ public class LinkedInLearningApiHelper {
   static class SearchResults {
 
     @JsonProperty("paging")
-    Paging paging;
+    final Paging paging;
 
+    /**
+     * Never {@code null}; empty when the response had no elements.
+     */
     @JsonProperty("elements")
-    List<Element> elements;
+    final List<Element> elements;
+
+    @JsonCreator
+    SearchResults(@JsonProperty("paging") Paging paging, @JsonProperty("elements") List<Element> elements) {
+      this.paging = paging;
+      this.elements = (elements == null) ? Collections.<Element>emptyList() : Collections.unmodifiableList(elements);
+    }
     
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+	return true;
+      }
+      if (!(o instanceof SearchResults)) {
+	return false;
+      }
+      SearchResults other = (SearchResults) o;
+      return Objects.equals(paging, other.paging) && elements.equals(other.elements);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Objects.hashCode(paging) + elements.hashCode();
+    }
+
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+      return "SearchResults{paging=" + paging + ", elements=" + elements + "}";
     }
   }
 
   public static SearchResults search(String category, String keywords) throws IOException {
-    URL url = new URL("https://www.linkedin.com/learning-api/search?q=search&entityType=" +
-		      URLEncoder.encode(category, "UTF-8") +
-		      "&keywords=" + URLEncoder.encode(keywords, "UTF-8"));
+    SearchResults results = get(searchPath(category, keywords), SearchResultsReader::read);
+    cachePlaybackUrls(results, category);
+    return results;
+  }
 
-    HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+  /**
+   * Like {@link #search(String, String)}, as a speculative call for work no customer is waiting
+   * on, e.g. refreshing snapshots, so it neither takes a request's place in the transport's
+   * bulkhead nor counts towards its circuit breaker and latency statistics.
+   */
+  public static SearchResults searchInBackground(String category, String keywords) throws IOException {
+    SearchResults results = getInBackground(searchPath(category, keywords), SearchResultsReader::read);
+    cachePlaybackUrls(results, category);
+    return results;
+  }
 
-    conn.setRequestMethod("GET");
-    conn.setRequestProperty("Cookie", "JSESSIONID=csrf");
-    conn.setRequestProperty("Csrf-Token", "csrf");
+  private static String searchPath(String category, String keywords) throws IOException {
+    return "/search?q=search&entityType=" + URLEncoder.encode(category, "UTF-8") +
+      "&keywords=" + URLEncoder.encode(keywords, "UTF-8");
+  }
 
-    return new ObjectMapper().readValue(conn.getInputStream(), SearchResults.class);
+  /**
+   * Caches the playback urls that come with course hits, which are those of the courses'
+   * introductions, so that playing one of the results does not call the Learning API again.
+   */
+  private static void cachePlaybackUrls(SearchResults results, String category) {
+    if (!"COURSE".equals(category)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (Element element : results.elements) {
+      if (element.hitInfo == null || element.hitInfo.searchCourse == null || element.hitInfo.searchCourse.course == null
+	  || element.selectedVideo == null || element.selectedVideo.url == null) {
+	continue;
+      }
+      String slug = element.hitInfo.searchCourse.course.slug;
+      Url url = element.selectedVideo.url;
+      long expiresAt = playbackExpiry(url);
+      if (slug != null && url.progressiveUrl != null && expiresAt > now && expiresAt > PLAYBACK_CACHE.getExpiresAt(slug)) {
+	PLAYBACK_CACHE.put(slug, url, expiresAt);
+      }
+    }
   }
 
   public static List<Content> summarize(SearchResults results, String category) {
@@ -229,21 +624,342 @@ public class LinkedInLearningApiHelper {
     }
   }
 
+  /**
+   * Searches for {@code keywords} in {@code category} and summarizes the results, answering from
+   * the in-process cache when the same normalized query was seen recently.
+   */
+  public static List<Content> searchSummary(String category, String keywords) throws IOException {
+    return searchSummary(category, keywords, null);
+  }
+
+  /**
+   * Like {@link #searchSummary(String, String)}, with the cache key already computed (e.g. by
+   * {@link SlotVocabulary}) or {@code null} to compute it. If the search fails, an expired cache
+   * entry for the query is served instead when there is one.
+   */
+  public static List<Content> searchSummary(String category, String keywords, String key) throws IOException {
+    if (key == null) {
+      key = searchKey(category, keywords);
+    }
+    List<Content> contents = SEARCH_CACHE.get(key);
+    if (contents == null) {
+      try {
+	contents = Collections.unmodifiableList(summarize(search(category, normalizeKeywords(keywords)), category));
+      } catch (IOException e) {
+	contents = SEARCH_CACHE.getStale(key);
+	if (contents == null) {
+	  throw e;
+	}
+	log.info("Serving stale search results for {}: {}", key, e.getMessage());
+	return contents;
+      }
+      SEARCH_CACHE.put(key, contents);
+    }
+    return contents;
+  }
+
+  /**
+   * Fills the search cache for {@code keywords} in {@code category} with a background search,
+   * unless it already holds a fresh entry.
+   */
+  public static void warmSearchSummary(String category, String keywords) throws IOException {
+    String key = searchKey(category, keywords);
+    if (SEARCH_CACHE.get(key) == null) {
+      SEARCH_CACHE.put(key, Collections.unmodifiableList(
+	summarize(searchInBackground(category, normalizeKeywords(keywords)), category)));
+    }
+  }
+
+  /**
+   * Searches courses, videos and learning paths for {@code keywords} in parallel and merges the
+   * results, taking the best hit of each type in turn. Types that have not answered within the
+   * fan-out deadline are left out, so the call takes at most as long as the deadline.
+   *
+   * @throws IOException
+   *             if no type answered, a {@link LearningApiUnavailableException} if none was even
+   *             tried
+   */
+  public static List<Content> searchAll(String keywords) throws IOException {
+    long deadline = System.currentTimeMillis() + FAN_OUT_DEADLINE_MILLIS;
+
+    List<Future<List<Content>>> futures = new ArrayList<Future<List<Content>>>();
+    for (String category : ENTITY_TYPES) {
+      futures.add(_executor.submit(RequestMetrics.propagate(() -> searchSummary(category, keywords))));
+    }
+
+    List<List<Content>> answered = new ArrayList<List<Content>>();
+    Exception failure = null;
+    boolean unavailable = true;
+    for (int i = 0; i < futures.size(); i++) {
+      Future<List<Content>> future = futures.get(i);
+      try {
+	answered.add(future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+	// Leave it running; its result still lands in the search cache for next time.
+	log.info("Fan-out search for {} missed the deadline, keywords={}", ENTITY_TYPES[i], keywords);
+	failure = e;
+	unavailable = false;
+      } catch (ExecutionException e) {
+	failure = e;
+	if (e.getCause() instanceof LearningApiUnavailableException) {
+	  log.info("Fan-out search for {} skipped: {}", ENTITY_TYPES[i], e.getCause().getMessage());
+	} else {
+	  log.warn("Fan-out search for {} failed, keywords={}", ENTITY_TYPES[i], keywords, e.getCause());
+	  unavailable = false;
+	}
+      } catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+	throw new InterruptedIOException("Interrupted during fan-out search");
+      }
+    }
+
+    if (answered.isEmpty() && unavailable) {
+      throw new LearningApiUnavailableException("Learning API unavailable for the search for " + keywords, failure);
+    } else if (answered.isEmpty()) {
+      throw new IOException("No entity type answered the search for " + keywords, failure);
+    }
+    return interleave(answered);
+  }
+
+  /**
+   * Merges ranked lists by taking the next item of each list in turn, dropping repeated slugs.
+   */
+  static List<Content> interleave(List<List<Content>> ranked) {
+    List<Content> merged = new ArrayList<Content>();
+    Set<String> slugs = new HashSet<String>();
+    int longest = 0;
+    for (List<Content> list : ranked) {
+      longest = Math.max(longest, list.size());
+    }
+    for (int rank = 0; rank < longest; rank++) {
+      for (List<Content> list : ranked) {
+	if (rank < list.size()) {
+	  Content item = list.get(rank);
+	  if (item != null && (item.slug == null || slugs.add(item.slug))) {
+	    merged.add(item);
+	  }
+	}
+      }
+    }
+    return merged;
+  }
+
+  static String searchKey(String category, String keywords) {
+    return category.toUpperCase(Locale.US) + '|' + normalizeKeywords(keywords);
+  }
+
+  private static String normalizeKeywords(String keywords) {
+    if (keywords == null) {
+      return "";
+    }
+    return keywords.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+  }
+
+  public static ExpiringLruCache<String, List<Content>> getSearchCache() {
+    return SEARCH_CACHE;
+  }
+
   public static SearchResults searchCourses(String slug) throws IOException {
-    URL url = new URL("https://www.linkedin.com/learning-api/detailedCourses?courseSlug=" +
-		      URLEncoder.encode(slug, "UTF-8") + "&q=slugs");
+    return get(coursePath(slug), SearchResultsReader::read);
+  }
 
-    HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+  /**
+   * Like {@link #searchCourses(String)}, as a speculative call that can be aborted by
+   * {@link #awaitBackgroundCalls(long)}.
+   */
+  private static SearchResults searchCoursesInBackground(String slug) throws IOException {
+    return getInBackground(coursePath(slug), SearchResultsReader::read);
+  }
 
-    conn.setRequestMethod("GET");
-    conn.setRequestProperty("Cookie", "JSESSIONID=csrf");
-    conn.setRequestProperty("Csrf-Token", "csrf");
+  /**
+   * Calls the transport speculatively, unrecorded, so that {@link #awaitBackgroundCalls(long)}
+   * can abort the call.
+   */
+  private static <T> T getInBackground(String pathAndQuery, LearningApiTransport.ResponseParser<T> parser)
+    throws IOException {
+    AtomicReference<Runnable> abort = new AtomicReference<Runnable>();
+    try {
+      return _transport.getSpeculative(pathAndQuery, parser, action -> {
+	  abort.set(action);
+	  BACKGROUND_ABORTS.add(action);
+	});
+    } finally {
+      Runnable action = abort.get();
+      if (action != null) {
+	BACKGROUND_ABORTS.remove(action);
+      }
+    }
+  }
 
-    return new ObjectMapper().readValue(conn.getInputStream(), SearchResults.class);
+  private static String coursePath(String slug) throws IOException {
+    return "/detailedCourses?courseSlug=" + URLEncoder.encode(slug, "UTF-8") + "&q=slugs";
   }
 
+  /**
+   * Waits up to {@code timeoutMillis} for the background playback url fetches to finish, then
+   * aborts those still waiting on the Learning API, e.g. before a Lambda container is frozen,
+   * which would otherwise hold them until the next invocation. A later request for one of their
+   * urls fetches it again.
+   */
+  public static void awaitBackgroundCalls(long timeoutMillis) {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    for (Future<Url> fetch : PLAYBACK_FETCHES.values()) {
+      try {
+	fetch.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (ExecutionException | CancellationException e) {
+	// Already logged by the fetch.
+      } catch (TimeoutException e) {
+	break;
+      } catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+	break;
+      }
+    }
+    for (Runnable abort : BACKGROUND_ABORTS) {
+      abort.run();
+    }
+  }
+
+  /**
+   * Calls the transport, recording the time of the call and of parsing the response in the
+   * current request's metrics.
+   */
+  private static <T> T get(String pathAndQuery, LearningApiTransport.ResponseParser<T> parser) throws IOException {
+    RequestMetrics metrics = RequestMetrics.current();
+    if (metrics == null) {
+      return _transport.get(pathAndQuery, parser);
+    }
+
+    long start = System.nanoTime();
+    try {
+      return _transport.get(pathAndQuery, body -> {
+	  long parseStart = System.nanoTime();
+	  try {
+	    return parser.parse(body);
+	  } finally {
+	    metrics.add(RequestMetrics.Phase.PARSE, System.nanoTime() - parseStart);
+	  }
+	});
+    } finally {
+      metrics.add(RequestMetrics.Phase.API, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Returns the playback url for the course, from the playback cache when a url that is not
+   * about to expire is known. Urls nearing expiry are still served but refreshed in the
+   * background so the next request finds a fresh one. If a prefetch for the course is already
+   * under way it is awaited rather than repeated. If the url cannot be fetched, a cached one
+   * past its refresh time is still served as long as the API has not said it has expired.
+   */
   public static String getPlaybackUrl(String slug) throws IOException {
-    return searchCourses(slug).elements.get(0).selectedVideo.url.progressiveUrl;
+    Url url = PLAYBACK_CACHE.get(slug);
+    if (url == null) {
+      Future<Url> inFlight = PLAYBACK_FETCHES.get(slug);
+      try {
+	url = (inFlight != null) ? await(inFlight, slug) : fetchPlaybackUrl(slug);
+      } catch (IOException e) {
+	url = PLAYBACK_CACHE.getStale(slug);
+	if (url == null || url.expiresAt == null || expiresAtMillis(url) <= System.currentTimeMillis()) {
+	  throw e;
+	}
+	log.info("Serving stale playback url for slug={}: {}", slug, e.getMessage());
+      }
+    } else if (PLAYBACK_CACHE.getExpiresAt(slug) - System.currentTimeMillis() < PLAYBACK_REFRESH_AHEAD_MILLIS) {
+      fetchPlaybackUrlAsync(slug);
+    }
+    return url.progressiveUrl;
+  }
+
+  /**
+   * Starts fetching the playback urls of the courses in the background, unless fresh urls are
+   * already cached, so that a following {@link #getPlaybackUrl(String)} is served from memory.
+   */
+  public static void prefetchPlaybackUrls(List<String> slugs) {
+    long now = System.currentTimeMillis();
+    for (String slug : slugs) {
+      if (slug != null && PLAYBACK_CACHE.getExpiresAt(slug) - now < PLAYBACK_REFRESH_AHEAD_MILLIS) {
+	fetchPlaybackUrlAsync(slug);
+      }
+    }
+  }
+
+  private static Url fetchPlaybackUrl(String slug) throws IOException {
+    return fetchPlaybackUrl(slug, false);
+  }
+
+  private static Url fetchPlaybackUrl(String slug, boolean background) throws IOException {
+    SearchResults results = background ? searchCoursesInBackground(slug) : searchCourses(slug);
+    if (results.elements.isEmpty() || results.elements.get(0).selectedVideo == null
+	|| results.elements.get(0).selectedVideo.url == null) {
+      throw new IOException("No playback url for slug=" + slug);
+    }
+
+    Url url = results.elements.get(0).selectedVideo.url;
+    PLAYBACK_CACHE.put(slug, url, playbackExpiry(url));
+    return url;
+  }
+
+  private static Future<Url> fetchPlaybackUrlAsync(String slug) {
+    Future<Url> inFlight = PLAYBACK_FETCHES.get(slug);
+    if (inFlight != null) {
+      return inFlight;
+    }
+
+    FutureTask<Url> task = new FutureTask<Url>(() -> {
+	try {
+	  return fetchPlaybackUrl(slug, true);
+	} catch (LearningApiUnavailableException e) {
+	  log.debug("Not fetching playback url in the background for slug={}: {}", slug, e.getMessage());
+	  throw e;
+	} catch (Exception e) {
+	  log.info("Unable to fetch playback url in the background for slug={}: {}", slug, e.getMessage());
+	  throw e;
+	} finally {
+	  PLAYBACK_FETCHES.remove(slug);
+	}
+      });
+    inFlight = PLAYBACK_FETCHES.putIfAbsent(slug, task);
+    if (inFlight != null) {
+      return inFlight;
+    }
+    _executor.execute(task);
+    return task;
+  }
+
+  private static Url await(Future<Url> fetch, String slug) throws IOException {
+    try {
+      return fetch.get(PLAYBACK_AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      // The background fetch failed; try once more in the foreground.
+      return fetchPlaybackUrl(slug);
+    } catch (TimeoutException e) {
+      throw new IOException("Timed out waiting for playback url of slug=" + slug, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for playback url of slug=" + slug);
+    }
+  }
+
+  /**
+   * Time until which a playback url may be served: shortly before {@code expiresAt}, or the
+   * default TTL when the API does not say.
+   */
+  static long playbackExpiry(Url url) {
+    long now = System.currentTimeMillis();
+    if (url.expiresAt == null) {
+      return now + PLAYBACK_DEFAULT_TTL_MILLIS;
+    }
+    return Math.max(now, expiresAtMillis(url) - PLAYBACK_EXPIRY_MARGIN_MILLIS);
+  }
+
+  private static long expiresAtMillis(Url url) {
+    // expiresAt is epoch millis; tolerate epoch seconds as well.
+    return (url.expiresAt < 100000000000L) ? url.expiresAt * 1000L : url.expiresAt;
+  }
+
+  static ExpiringLruCache<String, Url> getPlaybackCache() {
+    return PLAYBACK_CACHE;
   }
 
   public static void main(String[] args) throws Exception {
@@ -0,0 +1,42 @@
+package linkedinlearning;
+
+/**
+ * Runtime settings for the skill. Each setting is looked up first as a system property
+ * (e.g. {@code linkedinlearning.api.baseUrl}) and then as an environment variable derived from
+ * the property name (e.g. {@code LINKEDINLEARNING_API_BASEURL}) so the same keys work for both
+ * the Lambda console and a locally launched JVM.
+ */
+public final class LinkedInLearningConfig {
+
+  private LinkedInLearningConfig() {
+  }
+
+  public static String getString(String name, String defaultValue) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      value = System.getenv(name.toUpperCase().replace('.', '_'));
+    }
+    return (value == null || value.isEmpty()) ? defaultValue : value;
+  }
+
+  public static long getLong(String name, long defaultValue) {
+    String value = getString(name, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for " + name + ": " + value, e);
+    }
+  }
+
+  public static int getInt(String name, int defaultValue) {
+    return (int) getLong(name, defaultValue);
+  }
+
+  public static boolean getBoolean(String name, boolean defaultValue) {
+    String value = getString(name, null);
+    return (value == null) ? defaultValue : Boolean.parseBoolean(value.trim());
+  }
+}
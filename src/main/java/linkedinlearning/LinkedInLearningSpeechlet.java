@@ -1,5 +1,6 @@
 package linkedinlearning;
 
+import linkedinlearning.metrics.RequestMetrics;
 import linkedinlearning.storage.LearningUserData;
 import linkedinlearning.storage.LinkedInLearningDao;
 import linkedinlearning.storage.LinkedInLearningDbClient;
@@ -10,12 +11,15 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.TreeMap;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -57,7 +61,6 @@ import com.amazon.speech.ui.SsmlOutputSpeech;
 import com.amazon.speech.ui.Reprompt;
 import com.amazon.speech.ui.SimpleCard;
 import com.amazon.speech.ui.SsmlOutputSpeech;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 
 /**
  *
@@ -104,7 +107,9 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
  * User: "No"
  */
 public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
-  private LinkedInLearningDao _dao;
+  private final LinkedInLearningDao _dao;
+
+  private final PopularSnapshots _popular;
 
     private static final Logger log = LoggerFactory.getLogger(LinkedInLearningSpeechlet.class);
 
@@ -129,11 +134,29 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
      */
     private static final int MAX_ITEMS = 10;
 
+    /**
+     * The skill ids requests must come from, for both the Lambda handler and the servlet.
+     */
+    private static final Set<String> SUPPORTED_APPLICATION_IDS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("amzn1.ask.skill.2b8456c6-5766-4945-85e0-b0148788dae6")));
+
     /**
      * The number of items read for each pagination request, until we reach the MAX_ITEMS.
      */
     private static final int PAGINATION_SIZE = 3;
 
+    /**
+     * Whether a TeachMe request without a category searches all categories in parallel.
+     */
+    private static final boolean FAN_OUT_SEARCH =
+            LinkedInLearningConfig.getBoolean("linkedinlearning.api.fanOutSearch", true);
+
+    /**
+     * The number of leading results whose playback urls are fetched ahead of a play request.
+     */
+    private static final int PREFETCH_COUNT =
+            LinkedInLearningConfig.getInt("linkedinlearning.api.prefetchCount", 2);
+
     /**
      * The Category slot.
      */
@@ -143,20 +166,41 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
 
     /**
      * A Mapping of alternative ways a user will say a category to how Amazon has defined the
-     * category. Use a tree map so gets can be case insensitive.
+     * category. Lookups ignore case, whitespace and periods.
      */
-    private static final Map<String, String> spokenNameToCategory = new TreeMap<String, String>(
-            String.CASE_INSENSITIVE_ORDER);
-
-    static {
-        spokenNameToCategory.put("courses", "COURSE");
-        spokenNameToCategory.put("course", "COURSE");
-        spokenNameToCategory.put("videos", "VIDEO");
-        spokenNameToCategory.put("video", "VIDEO");
-        spokenNameToCategory.put("learning paths", "LEARNING_PATH");
-        spokenNameToCategory.put("learning path", "LEARNING_PATH");
-        spokenNameToCategory.put("paths", "LEARNING_PATH");
-        spokenNameToCategory.put("path", "LEARNING_PATH");
+    private static final CategoryLookup spokenNameToCategory = new CategoryLookup(new String[][] {
+        { "courses", "COURSE" },
+        { "course", "COURSE" },
+        { "videos", "VIDEO" },
+        { "video", "VIDEO" },
+        { "learning paths", "LEARNING_PATH" },
+        { "learning path", "LEARNING_PATH" },
+        { "paths", "LEARNING_PATH" },
+        { "path", "LEARNING_PATH" },
+    });
+
+    public static Set<String> getSupportedApplicationIds() {
+        return SUPPORTED_APPLICATION_IDS;
+    }
+
+    public LinkedInLearningSpeechlet() {
+        this(new LinkedInLearningDao(LinkedInLearningDbClient.fromConfig()));
+    }
+
+    public LinkedInLearningSpeechlet(LinkedInLearningDao dao) {
+        this(dao, PopularSnapshots.fromConfig());
+        if (LinkedInLearningConfig.getBoolean("linkedinlearning.popular.enabled", true)) {
+            _popular.start();
+        }
+        if (LinkedInLearningConfig.getBoolean("linkedinlearning.vocabulary.warm", true)) {
+            String warmTopics = LinkedInLearningConfig.getString("linkedinlearning.vocabulary.warmTopics", "java,excel");
+            SlotVocabulary.getDefault().warm(Arrays.asList(warmTopics.split("\\s*,\\s*")));
+        }
+    }
+
+    public LinkedInLearningSpeechlet(LinkedInLearningDao dao, PopularSnapshots popular) {
+        _dao = dao;
+        _popular = popular;
     }
 
     @Override
@@ -166,7 +210,6 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
                 session.getSessionId());
 
         // any initialization logic goes here
-	_init();
     }
 
     @Override
@@ -189,11 +232,20 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
     @Override
     public SpeechletResponse onIntent(final IntentRequest request, final Session session)
             throws SpeechletException {
+        Intent intent = request.getIntent();
+        RequestMetrics.startIntent((intent != null && intent.getName() != null) ? intent.getName() : "Unknown");
+        try {
+            return handleIntent(request, session);
+        } finally {
+            RequestMetrics.endIntent();
+        }
+    }
+
+    private SpeechletResponse handleIntent(final IntentRequest request, final Session session)
+            throws SpeechletException {
         log.info("onIntent requestId={}, sessionId={}", request.getRequestId(),
                 session.getSessionId());
 
-	_init();
-
         Intent intent = request.getIntent();
         String intentName = (intent != null) ? intent.getName() : null;
 
@@ -205,13 +257,13 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
             return getNext(intent, session);
         } else if ("DontHearMore".equals(intentName)) {
 	  if (session.getAttributes().containsKey(SESSION_CURRENT_INDEX)) {
-	    int i = (Integer) session.getAttribute(SESSION_CURRENT_INDEX) + 1;
-	    session.setAttribute(SESSION_CURRENT_INDEX, i);
-	    
-	    Map<String, String> item = (Map<String, String>) session.getAttribute(Integer.toString(i));
-	    if ((item != null) && (item.get("slug") != null)) {
+	    // Learning paths cannot be played, so offer the next course or video.
+	    int i = SessionItems.nextPlayable(session, (Integer) session.getAttribute(SESSION_CURRENT_INDEX) + 1);
+	    Content item = SessionItems.get(session, i);
+	    if (item != null) {
+	      session.setAttribute(SESSION_CURRENT_INDEX, i);
 
-	      return newAskResponse("Would you like to listen to the course introduction of " + item.get("title"), false,
+	      return newAskResponse("Would you like to listen to the course introduction of " + item.title, false,
 				    "Would you like to listen to the introduction? Please say yes or no or exit.", false);
 	    }
 	  }	  
@@ -228,7 +280,7 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
 
 	    userData.setOffset(System.currentTimeMillis() - userData.getStart() + userData.getOffset());
 
-	    _dao.saveUserData(session, userData);
+	    _dao.savePlaybackPosition(session, userData);
 
 	    directives.add(new StopDirective());
 
@@ -333,10 +385,11 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
           lookupCategory = "COURSE";
 
         // Remove the periods to fix things like d. v. d.s to dvds
-        String category = categorySlot.getValue().replaceAll("\\.\\s*", "");
+        String category = CategoryLookup.stripPeriods(categorySlot.getValue());
 
         if (lookupCategory != null) {
-          List<Content> items = fetchTitles(lookupCategory, "");
+          List<Content> items = fetchPopularTitles(lookupCategory);
+          prefetchPlayback(items);
 
             // Configure the card and speech output.
             String cardTitle = "Popular in " + category;
@@ -347,7 +400,7 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
             session.setAttribute(SESSION_CURRENT_CATEGORY, category);
 
             // Iterate through the response and set the intial response, as well as the
-            // session attributes for pagination.
+            // current index for pagination.
             int i = 0;
             for (Content item : items) {
                 int numberInList = i + 1;
@@ -358,8 +411,7 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
                     session.setAttribute(SESSION_CURRENT_INDEX, numberInList);
                 }
 
-                // Set the session attributes and full card output
-                session.setAttribute(Integer.toString(i), item);
+                // Set the full card output
                 cardOutput.append(numberInList).append(". ").append(item.title).append(".");
                 i++;
             }
@@ -371,6 +423,7 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
                         + " at this time. Please try again later. Goodbye.</speak>");
                 return SpeechletResponse.newTellResponse(output);
             }
+            SessionItems.set(session, items);
 
 	    speechOutput.append(" Would you like to listen to the introduction?");
             repromptText = "Would you like to listen to the introduction? Please say yes or no.";
@@ -427,9 +480,14 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
 
         // Remove the periods to fix things like d. v. d.s to dvds
         String category;
+        boolean allCategories = false;
         if ((categorySlot != null) && (categorySlot.getValue() != null))
-          category = categorySlot.getValue().replaceAll("\\.\\s*", "");
-        else
+          category = CategoryLookup.stripPeriods(categorySlot.getValue());
+        else if (FAN_OUT_SEARCH) {
+          // No category asked for, so search all of them at once.
+          category = "courses, videos and learning paths";
+          allCategories = true;
+        } else
           category = "courses";
 
         String keywords = null;
@@ -443,7 +501,11 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
         }
 
         if (lookupCategory != null) {
-          List<Content> items = fetchTitles(lookupCategory, keywords);
+          // Known slot values search for their canonical query under a precomputed cache key.
+          SlotVocabulary.Entry topic = SlotVocabulary.getDefault().resolve(keywords);
+          String query = (topic != null) ? topic.getQuery() : keywords;
+          List<Content> items = allCategories ? fetchAllTitles(query) : fetchTitles(lookupCategory, query, topic);
+          prefetchPlayback(items);
 
           // Configure the card and speech output.
           String cardTitle = "Popular " + category + " about " + keywords;
@@ -454,7 +516,7 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
             session.setAttribute(SESSION_CURRENT_CATEGORY, category);
 
             // Iterate through the response and set the initial response, as well as the
-            // session attributes for pagination.
+            // current index for pagination.
             int i = 0;
             for (Content item : items) {
                 int numberInList = i + 1;
@@ -465,8 +527,7 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
                     session.setAttribute(SESSION_CURRENT_INDEX, i);
                 }
 
-                // Set the session attributes and full card output
-                session.setAttribute(Integer.toString(i), item);
+                // Set the full card output
                 cardOutput.append(numberInList).append(". ").append(item.title).append(".");
                 i++;
             }
@@ -475,9 +536,10 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
                 // There were no items returned for the specified item.
                 SsmlOutputSpeech output = new SsmlOutputSpeech();
                 output.setSsml("<speak>I'm sorry, I cannot get the " + category
-                        + " for " + keywords + "at this time. Please try again later. Goodbye.</speak>");
+                        + " for " + keywords + " at this time. Please try again later. Goodbye.</speak>");
                 return SpeechletResponse.newTellResponse(output);
             }
+            SessionItems.set(session, items);
 
 	    speechOutput.append(" Would you like to listen to the course introduction?");
             repromptText = "Would you like to listen to the introduction? Please say yes or no.";
@@ -505,31 +567,141 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
     }
 
     /**
-     * Fetches the top ten selling titles from the Product Advertising API.
+     * Fetches the top titles for the category and keywords from the local catalog index when it
+     * has matches, otherwise from the Learning API, or from the search cache when the same query
+     * was answered recently. Returns no titles if the Learning API cannot answer and nothing is
+     * cached.
      *
      * @throws SpeechletException
      */
   private List<Content> fetchTitles(String category, String keywords) throws SpeechletException {
+    return fetchTitles(category, keywords, null);
+  }
+
+  private List<Content> fetchTitles(String category, String keywords, SlotVocabulary.Entry topic)
+    throws SpeechletException {
+    List<Content> indexed = searchCatalog(category, keywords);
+    if (!indexed.isEmpty()) {
+      return indexed;
+    }
+
+    try {
+      return LinkedInLearningApiHelper.searchSummary(category, keywords,
+						     (topic != null) ? topic.getCacheKey(category) : null);
+    } catch (IOException e) {
+      // Answered from a stale snapshot or with the apology for no results rather than failing
+      // the request, whether or not the circuit has opened yet.
+      log.warn("No results for {} from the Learning API: {}", category, e.getMessage());
+      return Collections.emptyList();
+    } catch (Exception e) {
+      throw new SpeechletException(e);
+    }
+  }
+
+    /**
+     * Returns the popular titles of the category from the in-memory snapshot, fetching and
+     * recording them when there is no usable snapshot.
+     *
+     * @throws SpeechletException
+     */
+  private List<Content> fetchPopularTitles(String category) throws SpeechletException {
+    PopularSnapshots.Snapshot snapshot = _popular.get(category);
+    if (snapshot != null) {
+      log.debug("Serving popular {} from snapshot ageMillis={}", category, snapshot.getAgeMillis());
+      return snapshot.getContents();
+    }
+
+    List<Content> items = fetchTitles(category, "");
+    if (items.isEmpty()) {
+      // Most likely the Learning API is unavailable; an old snapshot is better than none.
+      snapshot = _popular.getStale(category);
+      if (snapshot != null) {
+        log.info("Serving popular {} from stale snapshot ageMillis={}", category, snapshot.getAgeMillis());
+        return snapshot.getContents();
+      }
+      return items;
+    }
+    _popular.put(category, items);
+    return items;
+  }
+
+    /**
+     * Fetches the top courses, videos and learning paths for the keywords in parallel.
+     *
+     * @throws SpeechletException
+     */
+  private List<Content> fetchAllTitles(String keywords) throws SpeechletException {
+    List<Content> indexed = searchCatalog(null, keywords);
+    if (!indexed.isEmpty()) {
+      return indexed;
+    }
+
     try {
-      return LinkedInLearningApiHelper.summarize(LinkedInLearningApiHelper.search(category, keywords), category);
+      return LinkedInLearningApiHelper.searchAll(keywords);
+    } catch (IOException e) {
+      log.warn("No results from the Learning API: {}", e.getMessage());
+      return Collections.emptyList();
     } catch (Exception e) {
       throw new SpeechletException(e);
     }
   }
 
+  /**
+   * Searches the local catalog index, if there is one. Keyword-less requests ask for what is
+   * popular, which the index cannot rank, so they are always left to the Learning API.
+   */
+  private List<Content> searchCatalog(String category, String keywords) {
+    CatalogIndex index = CatalogIndex.getDefault();
+    if (index == null || keywords == null || keywords.trim().isEmpty()) {
+      return Collections.emptyList();
+    }
+    return index.search(category, keywords, MAX_ITEMS);
+  }
+
+  /**
+   * Starts fetching the playback urls of the first courses and videos so that a "yes, play it"
+   * on the next turn does not wait on the Learning API.
+   */
+  private void prefetchPlayback(List<Content> items) {
+    List<String> slugs = new ArrayList<String>(PREFETCH_COUNT);
+    for (Content item : items) {
+      if (slugs.size() == PREFETCH_COUNT) {
+        break;
+      }
+      if (!(item instanceof LinkedInLearningApiHelper.LearningPath)) {
+        slugs.add(item.slug);
+      }
+    }
+    LinkedInLearningApiHelper.prefetchPlaybackUrls(slugs);
+  }
+
   private SpeechletResponse getNext(final Intent intent, final Session session) {
     List<Directive> directives = new LinkedList<Directive>();
 
     LearningUserData userData = _dao.getUserData(session);
 
-    log.info("DEBUGDEBUG: getNext userData={}", userData.toString());
+    if (log.isDebugEnabled()) {
+      log.debug("getNext customerId={} slug={} start={} offset={} totalVideos={} version={}",
+		session.getUser().getUserId(), userData.getSlug(), userData.getStart(), userData.getOffset(),
+		userData.getTotalVideos(), userData.getVersion());
+    }
 
+    Content skippedLearningPath = null;
     if (session.getAttributes().containsKey(SESSION_CURRENT_INDEX)) {
       int currentIndex = (Integer) session.getAttribute(SESSION_CURRENT_INDEX);
-      Map<String, String> item = (Map<String, String>) session.getAttribute(Integer.toString(currentIndex));
-      if ((item != null) && (item.get("slug") != null)) {
-	userData.setTitle(item.get("title"));
-	userData.setSlug(item.get("slug"));
+      Content current = SessionItems.get(session, currentIndex);
+      if (current instanceof LinkedInLearningApiHelper.LearningPath) {
+	skippedLearningPath = current;
+      }
+      // Learning paths cannot be played; play the next course or video instead.
+      int playable = SessionItems.nextPlayable(session, currentIndex);
+      Content item = SessionItems.get(session, playable);
+      if (playable > currentIndex) {
+	session.setAttribute(SESSION_CURRENT_INDEX, playable);
+      }
+      if (item != null) {
+	userData.setTitle(item.title);
+	userData.setSlug(item.slug);
       } else {
 	userData.setTitle(null);
 	userData.setSlug(null);
@@ -543,6 +715,9 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
       StringBuilder speechOutput = new StringBuilder();
 
       try {
+	if (skippedLearningPath != null) {
+	  speechOutput.append(skippedLearningPath.title).append(" is a learning path, which I cannot play. ");
+	}
 	speechOutput.append("Now playing ");
 	speechOutput.append(userData.getTitle());
 
@@ -564,12 +739,15 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
 	directives.add(play);
 
 	userData.setStart(System.currentTimeMillis());
-	userData.setTotalVideos(userData.getTotalVideos() + 1L);
       } catch (IOException e) {
-	log.error("Unable to retrieve playback url for slug=" + userData.getSlug(), e);
+	log.error("Unable to retrieve playback url for slug={}", userData.getSlug(), e);
       }
 
-      _dao.saveUserData(session, userData);
+      if (directives.isEmpty()) {
+	_dao.saveUserData(session, userData);
+      } else {
+	_dao.saveStartedVideo(session, userData);
+      }
 
       if (!directives.isEmpty()) {
 	SsmlOutputSpeech output = new SsmlOutputSpeech();
@@ -582,6 +760,12 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
       }
     }
 
+    if (skippedLearningPath != null) {
+      return newAskResponse(skippedLearningPath.title + " is a learning path, which I cannot play. "
+			    + "What else would you like to learn about?", false,
+			    "You can ask me for courses or videos about a topic, or say exit.", false);
+    }
+
     String repromptText =
       "<speak>I'm sorry I didn't understand that. You can say things like," +
       "teach me about java <break time=\"0.2s\" /> " +
@@ -604,17 +788,8 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
     private String getLookupWord(Slot categorySlot) {
         String lookupCategory = null;
         if (categorySlot != null && categorySlot.getValue() != null) {
-            // Lower case the incoming slot and remove spaces
-            String category =
-                    categorySlot
-                            .getValue()
-                            .toLowerCase()
-                            .replaceAll("\\s", "")
-                            .replaceAll("\\.", "")
-                            .replaceAll("three", "3");
-
-            // Check for spoken names
-            lookupCategory = spokenNameToCategory.get(category);
+            // Check for spoken names, ignoring case, spaces and periods
+            lookupCategory = spokenNameToCategory.lookup(categorySlot.getValue());
             if (lookupCategory == null) {
               lookupCategory = "COURSE";
             }
@@ -675,10 +850,4 @@ public class LinkedInLearningSpeechlet implements Speechlet, AudioPlayer {
         reprompt.setOutputSpeech(repromptOutputSpeech);
         return SpeechletResponse.newAskResponse(outputSpeech, reprompt);
     }
-
-  private void _init() {
-    if (_dao == null) {
-      _dao = new LinkedInLearningDao(new LinkedInLearningDbClient(new AmazonDynamoDBClient()));
-    }
-  }
 }
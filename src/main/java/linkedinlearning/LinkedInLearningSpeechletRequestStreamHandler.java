@@ -1,23 +1,168 @@
 package linkedinlearning;
 
-import java.util.HashSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Set;
 
+import linkedinlearning.metrics.RequestMetrics;
+import linkedinlearning.storage.LearningUserData;
+import linkedinlearning.storage.LearningUserDataItem;
+import linkedinlearning.storage.LinkedInLearningDao;
+import linkedinlearning.storage.LinkedInLearningDbClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.amazon.speech.speechlet.lambda.SpeechletRequestStreamHandler;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 
 /**
  * This class is created by the Lambda environment when a request comes in. All calls will be
- * dispatched to the Speechlet passed into the super constructor.
+ * dispatched to the Speechlet passed into the wrapped {@link SpeechletRequestStreamHandler}.
+ * Before the invocation returns, and the container may be frozen, pending user data writes are
+ * flushed, and background playback url fetches are given a moment to finish and then aborted.
+ * Each invocation's {@link RequestMetrics} are reported once the writes are flushed.
+ *
+ * <p>The speechlet and its clients are built, and exercised with a synthetic launch request,
+ * when the class is initialized, which Lambda does in the container's init phase rather than on
+ * the first customer request.
+ *
+ * <p>Logging is configured by {@code log4j-production.xml} unless {@code log4j.configuration} or
+ * {@code linkedinlearning.logging.config}, e.g. {@code log4j.properties} for debug logging,
+ * chooses another file.
  */
-public final class LinkedInLearningSpeechletRequestStreamHandler extends SpeechletRequestStreamHandler {
-    private static final Set<String> supportedApplicationIds;
+public final class LinkedInLearningSpeechletRequestStreamHandler implements RequestStreamHandler {
+    static {
+        if (System.getProperty("log4j.configuration") == null) {
+            System.setProperty("log4j.configuration",
+                    LinkedInLearningConfig.getString("linkedinlearning.logging.config", "log4j-production.xml"));
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LinkedInLearningSpeechletRequestStreamHandler.class);
+
+    private static final Set<String> supportedApplicationIds = LinkedInLearningSpeechlet.getSupportedApplicationIds();
+
+    /**
+     * How long an invocation waits for background playback url fetches before aborting them.
+     */
+    private static final long BACKGROUND_WAIT_MILLIS =
+            LinkedInLearningConfig.getLong("linkedinlearning.api.backgroundWaitMillis", 500L);
+
+    private static final String SEARCH_RESULTS_SAMPLE = "{\"paging\":{\"start\":0,\"count\":1,\"total\":1},"
+            + "\"elements\":[{\"hitInfo\":{\"com.linkedin.learning.api.search.SearchCourse\":"
+            + "{\"course\":{\"title\":\"Startup\",\"slug\":\"startup\"}}},"
+            + "\"selectedVideo\":{\"url\":{\"progressiveUrl\":\"https://example.com/startup.mp4\",\"expiresAt\":0}}}]}";
+
+    private static final LinkedInLearningDao eagerDao;
+
+    private static final SpeechletRequestStreamHandler eagerHandler;
 
     static {
-        supportedApplicationIds = new HashSet<String>();
-        supportedApplicationIds.add("amzn1.ask.skill.2b8456c6-5766-4945-85e0-b0148788dae6");
+        if (LinkedInLearningConfig.getBoolean("linkedinlearning.startup.eagerInit", true)) {
+            long start = System.currentTimeMillis();
+            eagerDao = new LinkedInLearningDao(LinkedInLearningDbClient.fromConfig());
+            eagerHandler = newHandler(eagerDao);
+            prime(eagerHandler, eagerDao);
+            log.info("Initialized in {}ms", System.currentTimeMillis() - start);
+        } else {
+            eagerDao = null;
+            eagerHandler = null;
+        }
     }
 
+    private final LinkedInLearningDao dao;
+
+    private final SpeechletRequestStreamHandler handler;
+
     public LinkedInLearningSpeechletRequestStreamHandler() {
-        super(new LinkedInLearningSpeechlet(), supportedApplicationIds);
+        this((eagerDao != null) ? eagerDao : new LinkedInLearningDao(LinkedInLearningDbClient.fromConfig()),
+                eagerHandler);
+    }
+
+    /**
+     * Handles requests with user data from {@code dao}, e.g. an in-memory table under load tests.
+     */
+    public LinkedInLearningSpeechletRequestStreamHandler(LinkedInLearningDao dao) {
+        this(dao, null);
+    }
+
+    private LinkedInLearningSpeechletRequestStreamHandler(LinkedInLearningDao dao,
+            SpeechletRequestStreamHandler handler) {
+        this.dao = dao;
+        this.handler = (handler != null) ? handler : newHandler(dao);
+    }
+
+    private static SpeechletRequestStreamHandler newHandler(LinkedInLearningDao dao) {
+        return new SpeechletRequestStreamHandler(new LinkedInLearningSpeechlet(dao), supportedApplicationIds) {
+        };
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        RequestMetrics.begin();
+        try {
+            handler.handleRequest(input, output, context);
+            RequestMetrics.responseWritten();
+        } finally {
+            dao.flush();
+            LinkedInLearningApiHelper.awaitBackgroundCalls(BACKGROUND_WAIT_MILLIS);
+            RequestMetrics.finish();
+        }
+    }
+
+    /**
+     * A launch request from the first supported skill, which needs no I/O to answer.
+     */
+    static byte[] launchRequest() {
+        String applicationId = supportedApplicationIds.iterator().next();
+        String envelope = "{\"version\":\"1.0\","
+                + "\"session\":{\"new\":true,\"sessionId\":\"SessionId.startup\","
+                + "\"application\":{\"applicationId\":\"" + applicationId + "\"},"
+                + "\"attributes\":{},\"user\":{\"userId\":\"linkedinlearning.startup\"}},"
+                + "\"request\":{\"type\":\"LaunchRequest\",\"requestId\":\"EdwRequestId.startup\","
+                + "\"timestamp\":\"" + Instant.now().truncatedTo(ChronoUnit.SECONDS) + "\",\"locale\":\"en-US\"}}";
+        return envelope.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs what a first request would otherwise do for the first time: request and response
+     * binding, response parsing, user data marshalling and, unless disabled, a DynamoDB read.
+     */
+    private static void prime(SpeechletRequestStreamHandler handler, LinkedInLearningDao dao) {
+        try {
+            handler.handleRequest(new ByteArrayInputStream(launchRequest()), new ByteArrayOutputStream(), null);
+        } catch (Exception e) {
+            log.warn("Unable to prime the request handler", e);
+        }
+
+        try {
+            SearchResultsReader.read(new ByteArrayInputStream(SEARCH_RESULTS_SAMPLE.getBytes(StandardCharsets.UTF_8)));
+            CatalogIndex.getDefault();
+        } catch (Exception e) {
+            log.warn("Unable to prime the Learning API client", e);
+        }
+
+        try {
+            LearningUserData userData = new LearningUserData();
+            userData.setTitle("Startup");
+            userData.setSlug("startup");
+            LearningUserDataItem.LearningUserDataMarshaller marshaller =
+                    new LearningUserDataItem.LearningUserDataMarshaller();
+            marshaller.unmarshall(LearningUserData.class, marshaller.marshall(userData));
+        } catch (Exception e) {
+            log.warn("Unable to prime user data marshalling", e);
+        }
+
+        if (LinkedInLearningConfig.getBoolean("linkedinlearning.startup.primeDynamoDb", true)) {
+            dao.warmUp();
+        }
     }
 }
@@ -0,0 +1,238 @@
+package linkedinlearning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import linkedinlearning.metrics.RequestMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.speech.speechlet.servlet.SpeechletServlet;
+
+/**
+ * A {@link SpeechletServlet} that hands each request off to an executor, e.g. one virtual thread
+ * per request, so the server's own threads only accept connections and parse requests. Signature,
+ * timestamp and application id verification are done by {@link SpeechletServlet} as usual.
+ *
+ * <p>Without an executor requests are handled on the server thread. Either way each request's
+ * {@link RequestMetrics} are reported once the response is written.
+ *
+ * <p>A request that outlives the async timeout is answered with a 503 straight away. The
+ * speechlet's response is buffered, and dropped if it finishes after that, because the container
+ * may already have reused the real response for another request.
+ */
+public class LinkedInLearningSpeechletServlet extends SpeechletServlet {
+  private static final Logger log = LoggerFactory.getLogger(LinkedInLearningSpeechletServlet.class);
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient Executor _executor;
+
+  private final long _asyncTimeoutMillis;
+
+  /**
+   * @param executor
+   *            runs the requests, or {@code null} to run them on the server thread
+   * @param asyncTimeoutMillis
+   *            how long a request handed to the executor may take before the container gives up
+   */
+  public LinkedInLearningSpeechletServlet(LinkedInLearningSpeechlet speechlet, Executor executor,
+					  long asyncTimeoutMillis) {
+    setSpeechlet(speechlet);
+    _executor = executor;
+    _asyncTimeoutMillis = asyncTimeoutMillis;
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (_executor == null) {
+      handle(request, response);
+      return;
+    }
+
+    AsyncContext async = request.startAsync();
+    // Set once the response has been claimed, by the handler or by the timeout.
+    AtomicBoolean done = new AtomicBoolean();
+    async.addListener(new AsyncListener() {
+	@Override
+	public void onTimeout(AsyncEvent event) {
+	  if (done.compareAndSet(false, true)) {
+	    log.warn("Speechlet request timed out after {}ms", _asyncTimeoutMillis);
+	    sendError(async, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	    async.complete();
+	  }
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) {
+	}
+
+	@Override
+	public void onError(AsyncEvent event) {
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+	}
+      });
+    async.setTimeout(_asyncTimeoutMillis);
+    try {
+      _executor.execute(() -> handleAsync(async, done));
+    } catch (RejectedExecutionException e) {
+      log.error("Unable to dispatch speechlet request", e);
+      if (done.compareAndSet(false, true)) {
+	sendError(async, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+	async.complete();
+      }
+    }
+  }
+
+  private void handleAsync(AsyncContext async, AtomicBoolean done) {
+    if (done.get()) {
+      // Timed out while waiting for the executor.
+      return;
+    }
+
+    RequestMetrics.begin();
+    try {
+      BufferedResponse buffered = new BufferedResponse((HttpServletResponse) async.getResponse());
+      super.doPost((HttpServletRequest) async.getRequest(), buffered);
+      if (done.compareAndSet(false, true)) {
+	try {
+	  buffered.writeTo((HttpServletResponse) async.getResponse());
+	  RequestMetrics.responseWritten();
+	} finally {
+	  async.complete();
+	}
+      }
+    } catch (Exception e) {
+      log.error("Unable to handle speechlet request", e);
+      if (done.compareAndSet(false, true)) {
+	sendError(async, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+	async.complete();
+      }
+    } finally {
+      RequestMetrics.finish();
+    }
+  }
+
+  private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestMetrics.begin();
+    try {
+      super.doPost(request, response);
+      RequestMetrics.responseWritten();
+    } finally {
+      RequestMetrics.finish();
+    }
+  }
+
+  private static void sendError(AsyncContext async, int status) {
+    HttpServletResponse response = (HttpServletResponse) async.getResponse();
+    if (!response.isCommitted()) {
+      try {
+	response.sendError(status);
+      } catch (IOException e) {
+	log.warn("Unable to send error response", e);
+      }
+    }
+  }
+
+  /**
+   * Holds what {@link SpeechletServlet} writes until the request is known not to have timed out.
+   */
+  private static final class BufferedResponse extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream _body = new ByteArrayOutputStream();
+
+    private int _status = SC_OK;
+
+    private boolean _error;
+
+    private String _errorMessage;
+
+    private String _contentType;
+
+    BufferedResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public void setStatus(int status) {
+      _status = status;
+    }
+
+    @Override
+    public void sendError(int status) {
+      sendError(status, null);
+    }
+
+    @Override
+    public void sendError(int status, String message) {
+      _status = status;
+      _error = true;
+      _errorMessage = message;
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+      _contentType = contentType;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+      // Set from the buffered body when it is written.
+    }
+
+    @Override
+    public boolean isCommitted() {
+      return false;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      return new ServletOutputStream() {
+	@Override
+	public void write(int b) {
+	  _body.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+	  _body.write(b, off, len);
+	}
+      };
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      return new PrintWriter(new OutputStreamWriter(_body, StandardCharsets.UTF_8));
+    }
+
+    void writeTo(HttpServletResponse response) throws IOException {
+      if (_error) {
+	response.sendError(_status, _errorMessage);
+	return;
+      }
+      response.setStatus(_status);
+      if (_contentType != null) {
+	response.setContentType(_contentType);
+      }
+      response.setContentLength(_body.size());
+      _body.writeTo(response.getOutputStream());
+    }
+  }
+}
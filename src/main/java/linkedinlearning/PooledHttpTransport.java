@@ -0,0 +1,133 @@
+package linkedinlearning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * {@link LearningApiTransport} backed by a shared, pooled Apache HttpClient. Connections are
+ * kept alive between requests (and between warm Lambda invocations) so only the first call pays
+ * for the TLS handshake. Every request is bounded by a connect timeout, a read timeout and an
+ * overall deadline after which the request is aborted.
+ */
+public class PooledHttpTransport implements LearningApiTransport {
+
+  private static final ScheduledExecutorService DEADLINES =
+    Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "learning-api-deadlines");
+        t.setDaemon(true);
+        return t;
+      });
+
+  private final String _baseUrl;
+  private final long _totalTimeoutMillis;
+  private final CloseableHttpClient _httpClient;
+
+  public PooledHttpTransport(String baseUrl, int connectTimeoutMillis, int readTimeoutMillis,
+			     long totalTimeoutMillis, int maxConnections) {
+    _baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    _totalTimeoutMillis = totalTimeoutMillis;
+
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+    RequestConfig requestConfig = RequestConfig.custom()
+      .setConnectTimeout(connectTimeoutMillis)
+      .setConnectionRequestTimeout(connectTimeoutMillis)
+      .setSocketTimeout(readTimeoutMillis)
+      .build();
+
+    _httpClient = HttpClients.custom()
+      .setConnectionManager(connectionManager)
+      .setDefaultRequestConfig(requestConfig)
+      .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+      .build();
+  }
+
+  /**
+   * Builds a transport from the {@code linkedinlearning.api.*} settings.
+   */
+  public static PooledHttpTransport fromConfig() {
+    return new PooledHttpTransport(
+      LinkedInLearningConfig.getString("linkedinlearning.api.baseUrl", "https://www.linkedin.com/learning-api"),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.connectTimeoutMillis", 1000),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.readTimeoutMillis", 2000),
+      LinkedInLearningConfig.getLong("linkedinlearning.api.totalTimeoutMillis", 3000),
+      LinkedInLearningConfig.getInt("linkedinlearning.api.maxConnections", 24));
+  }
+
+  public String getBaseUrl() {
+    return _baseUrl;
+  }
+
+  @Override
+  public <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException {
+    return get(pathAndQuery, parser, _totalTimeoutMillis, null);
+  }
+
+  @Override
+  public <T> T getSpeculative(String pathAndQuery, ResponseParser<T> parser, Consumer<Runnable> abortHook)
+    throws IOException {
+    return get(pathAndQuery, parser, _totalTimeoutMillis, abortHook);
+  }
+
+  @Override
+  public <T> T get(String pathAndQuery, ResponseParser<T> parser, long timeoutMillis, Consumer<Runnable> abortHook)
+    throws IOException {
+    HttpGet request = new HttpGet(_baseUrl + pathAndQuery);
+    request.setHeader("Cookie", "JSESSIONID=csrf");
+    request.setHeader("Csrf-Token", "csrf");
+
+    AtomicBoolean expired = new AtomicBoolean();
+    ScheduledFuture<?> deadline = DEADLINES.schedule(() -> {
+	expired.set(true);
+	request.abort();
+      }, timeoutMillis, TimeUnit.MILLISECONDS);
+    if (abortHook != null) {
+      abortHook.accept(request::abort);
+    }
+    try (CloseableHttpResponse response = _httpClient.execute(request)) {
+      int status = response.getStatusLine().getStatusCode();
+      HttpEntity entity = response.getEntity();
+      if (status != 200) {
+	EntityUtils.consumeQuietly(entity);
+	throw new IOException("Learning API returned " + status + " for " + pathAndQuery);
+      }
+      if (entity == null) {
+	throw new IOException("Learning API returned no body for " + pathAndQuery);
+      }
+
+      try (InputStream body = entity.getContent()) {
+	T result = parser.parse(body);
+	// Drain whatever the parser did not read so the connection goes back to the pool.
+	EntityUtils.consume(entity);
+	return result;
+      }
+    } catch (IOException e) {
+      if (expired.get()) {
+	throw new IOException("Learning API request exceeded " + timeoutMillis + "ms: " + pathAndQuery, e);
+      } else if (request.isAborted()) {
+	throw new IOException("Learning API request aborted: " + pathAndQuery, e);
+      }
+      throw e;
+    } finally {
+      deadline.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package linkedinlearning;
+
+import static linkedinlearning.LinkedInLearningApiHelper.Content;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory snapshots of the most popular content per category, so "popular courses" is answered
+ * without any I/O. Snapshots are taken when the container warms up and then on a schedule; a
+ * snapshot older than the maximum age is no longer served.
+ */
+public class PopularSnapshots {
+  private static final Logger log = LoggerFactory.getLogger(PopularSnapshots.class);
+
+  private static final String[] CATEGORIES = { "COURSE", "VIDEO", "LEARNING_PATH" };
+
+  /**
+   * Fetches the popular content of a category.
+   */
+  public interface Fetcher {
+    List<Content> fetch(String category) throws IOException;
+  }
+
+  /**
+   * The popular content of one category and when it was fetched.
+   */
+  public static final class Snapshot {
+    private final List<Content> _contents;
+    private final long _fetchedAt;
+
+    Snapshot(List<Content> contents, long fetchedAt) {
+      _contents = contents;
+      _fetchedAt = fetchedAt;
+    }
+
+    public List<Content> getContents() {
+      return _contents;
+    }
+
+    public long getFetchedAt() {
+      return _fetchedAt;
+    }
+
+    public long getAgeMillis() {
+      return System.currentTimeMillis() - _fetchedAt;
+    }
+  }
+
+  private final ConcurrentMap<String, Snapshot> _snapshots = new ConcurrentHashMap<String, Snapshot>();
+
+  private final Fetcher _fetcher;
+  private final int _size;
+  private final long _refreshMillis;
+  private final long _maxAgeMillis;
+
+  private ScheduledExecutorService _scheduler;
+
+  public PopularSnapshots(Fetcher fetcher, int size, long refreshMillis, long maxAgeMillis) {
+    _fetcher = fetcher;
+    _size = size;
+    _refreshMillis = refreshMillis;
+    _maxAgeMillis = maxAgeMillis;
+  }
+
+  /**
+   * Builds snapshots of the Learning API's unfiltered search from the
+   * {@code linkedinlearning.popular.*} settings.
+   */
+  public static PopularSnapshots fromConfig() {
+    return new PopularSnapshots(
+      category -> LinkedInLearningApiHelper.summarize(LinkedInLearningApiHelper.searchInBackground(category, ""),
+						      category),
+      LinkedInLearningConfig.getInt("linkedinlearning.popular.size", 10),
+      LinkedInLearningConfig.getLong("linkedinlearning.popular.refreshMillis", 60 * 60 * 1000L),
+      LinkedInLearningConfig.getLong("linkedinlearning.popular.maxAgeMillis", 24 * 60 * 60 * 1000L));
+  }
+
+  /**
+   * Takes the first snapshots in the background right away and refreshes them on schedule.
+   */
+  public synchronized void start() {
+    if (_scheduler != null) {
+      return;
+    }
+    _scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+	Thread t = new Thread(r, "popular-snapshots");
+	t.setDaemon(true);
+	return t;
+      });
+    _scheduler.scheduleWithFixedDelay(this::refreshAll, 0, _refreshMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stop() {
+    if (_scheduler != null) {
+      _scheduler.shutdownNow();
+      _scheduler = null;
+    }
+  }
+
+  /**
+   * Returns the snapshot of the category, or {@code null} if there is none younger than the
+   * maximum age.
+   */
+  public Snapshot get(String category) {
+    Snapshot snapshot = _snapshots.get(category);
+    return (snapshot == null || snapshot.getAgeMillis() > _maxAgeMillis) ? null : snapshot;
+  }
+
+  /**
+   * Returns the snapshot of the category however old it is, or {@code null} if there is none.
+   * Intended for answering while the Learning API is unavailable.
+   */
+  public Snapshot getStale(String category) {
+    return _snapshots.get(category);
+  }
+
+  /**
+   * Records freshly fetched popular content, e.g. from a request that had to go to the API.
+   */
+  public void put(String category, List<Content> contents) {
+    List<Content> top = new ArrayList<Content>(contents.subList(0, Math.min(_size, contents.size())));
+    _snapshots.put(category, new Snapshot(Collections.unmodifiableList(top), System.currentTimeMillis()));
+  }
+
+  public void refreshAll() {
+    for (String category : CATEGORIES) {
+      try {
+	put(category, _fetcher.fetch(category));
+      } catch (Exception e) {
+	// Keep serving the previous snapshot until it is too old.
+	log.warn("Unable to refresh popular {}", category, e);
+      }
+    }
+  }
+}
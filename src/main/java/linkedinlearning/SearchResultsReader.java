@@ -0,0 +1,221 @@
+package linkedinlearning;
+
+import static linkedinlearning.LinkedInLearningApiHelper.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Decodes Learning API responses into {@link SearchResults}.
+ *
+ * <p>The full mode binds the whole document through a shared, pre-built {@link ObjectReader}.
+ * The streaming mode walks the token stream and only materialises the fields the skill reads
+ * ({@code paging}, {@code title}/{@code slug} of each hit and {@code selectedVideo.url}),
+ * skipping everything else without allocating for it.
+ */
+final class SearchResultsReader {
+
+  static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final ObjectReader SEARCH_RESULTS_READER = OBJECT_MAPPER.reader(SearchResults.class);
+
+  private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
+  /**
+   * The streaming mode only reads the title and slug of courses.
+   */
+  private static final BiFunction<String, String, Course> COURSE = (title, slug) -> new Course(title, slug, null, null);
+
+  private static final boolean STREAMING =
+    LinkedInLearningConfig.getBoolean("linkedinlearning.api.streamingParse", true);
+
+  private SearchResultsReader() {
+  }
+
+  static SearchResults read(InputStream body) throws IOException {
+    return STREAMING ? readStreaming(body) : readFull(body);
+  }
+
+  static SearchResults readFull(InputStream body) throws IOException {
+    return SEARCH_RESULTS_READER.readValue(body);
+  }
+
+  static SearchResults readStreaming(InputStream body) throws IOException {
+    try (JsonParser p = JSON_FACTORY.createParser(body)) {
+      Paging paging = null;
+      List<Element> elements = new ArrayList<Element>();
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+	throw new IOException("Expected search results object but found " + p.getCurrentToken());
+      }
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+	String field = p.getCurrentName();
+	JsonToken value = p.nextToken();
+	if ("paging".equals(field) && value == JsonToken.START_OBJECT) {
+	  paging = readPaging(p);
+	} else if ("elements".equals(field) && value == JsonToken.START_ARRAY) {
+	  while (p.nextToken() == JsonToken.START_OBJECT) {
+	    elements.add(readElement(p));
+	  }
+	} else {
+	  p.skipChildren();
+	}
+      }
+      return new SearchResults(paging, elements);
+    }
+  }
+
+  private static Paging readPaging(JsonParser p) throws IOException {
+    Long start = null;
+    Long count = null;
+    Long total = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if (value == JsonToken.VALUE_NUMBER_INT) {
+	if ("start".equals(field)) {
+	  start = p.getLongValue();
+	} else if ("count".equals(field)) {
+	  count = p.getLongValue();
+	} else if ("total".equals(field)) {
+	  total = p.getLongValue();
+	}
+      } else {
+	p.skipChildren();
+      }
+    }
+    return new Paging(start, count, total);
+  }
+
+  private static Element readElement(JsonParser p) throws IOException {
+    HitInfo hitInfo = null;
+    SelectedVideo selectedVideo = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if ("hitInfo".equals(field) && value == JsonToken.START_OBJECT) {
+	hitInfo = readHitInfo(p);
+      } else if ("selectedVideo".equals(field) && value == JsonToken.START_OBJECT) {
+	selectedVideo = readSelectedVideo(p);
+      } else {
+	p.skipChildren();
+      }
+    }
+    return new Element(null, hitInfo, selectedVideo);
+  }
+
+  private static HitInfo readHitInfo(JsonParser p) throws IOException {
+    SearchCourse searchCourse = null;
+    SearchVideo searchVideo = null;
+    SearchLearningPath searchLearningPath = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if (value != JsonToken.START_OBJECT) {
+	p.skipChildren();
+      } else if ("com.linkedin.learning.api.search.SearchCourse".equals(field)) {
+	searchCourse = new SearchCourse(readContent(p, "course", COURSE));
+      } else if ("com.linkedin.learning.api.search.SearchVideo".equals(field)) {
+	searchVideo = new SearchVideo(readVideo(p));
+      } else if ("com.linkedin.learning.api.search.SearchLearningPath".equals(field)) {
+	searchLearningPath = new SearchLearningPath(readContent(p, "learningPath", LearningPath::new));
+      } else {
+	p.skipChildren();
+      }
+    }
+    return new HitInfo(searchCourse, searchVideo, searchLearningPath);
+  }
+
+  private static Video readVideo(JsonParser p) throws IOException {
+    Course course = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if ("video".equals(field) && value == JsonToken.START_OBJECT) {
+	course = readContent(p, "course", COURSE);
+      } else {
+	p.skipChildren();
+      }
+    }
+    return new Video(course);
+  }
+
+  /**
+   * Reads the title and slug of the object held by {@code wrapperField} inside the current object
+   * and creates the content from them, or returns {@code null} if there is no such object.
+   */
+  private static <T extends Content> T readContent(JsonParser p, String wrapperField,
+						   BiFunction<String, String, T> factory) throws IOException {
+    T content = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if (wrapperField.equals(field) && value == JsonToken.START_OBJECT) {
+	content = readTitleAndSlug(p, factory);
+      } else {
+	p.skipChildren();
+      }
+    }
+    return content;
+  }
+
+  private static <T extends Content> T readTitleAndSlug(JsonParser p, BiFunction<String, String, T> factory)
+    throws IOException {
+    String title = null;
+    String slug = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if (value == JsonToken.VALUE_STRING && "title".equals(field)) {
+	title = p.getText();
+      } else if (value == JsonToken.VALUE_STRING && "slug".equals(field)) {
+	slug = p.getText();
+      } else {
+	p.skipChildren();
+      }
+    }
+    return factory.apply(title, slug);
+  }
+
+  private static SelectedVideo readSelectedVideo(JsonParser p) throws IOException {
+    Url url = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if ("url".equals(field) && value == JsonToken.START_OBJECT) {
+	url = readUrl(p);
+      } else {
+	p.skipChildren();
+      }
+    }
+    return new SelectedVideo(url);
+  }
+
+  private static Url readUrl(JsonParser p) throws IOException {
+    String progressiveUrl = null;
+    String streamingUrl = null;
+    Long expiresAt = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if (value == JsonToken.VALUE_STRING && "progressiveUrl".equals(field)) {
+	progressiveUrl = p.getText();
+      } else if (value == JsonToken.VALUE_STRING && "streamingUrl".equals(field)) {
+	streamingUrl = p.getText();
+      } else if (value == JsonToken.VALUE_NUMBER_INT && "expiresAt".equals(field)) {
+	expiresAt = p.getLongValue();
+      } else {
+	p.skipChildren();
+      }
+    }
+    return new Url(progressiveUrl, streamingUrl, expiresAt);
+  }
+}
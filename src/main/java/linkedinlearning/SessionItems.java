@@ -0,0 +1,115 @@
+package linkedinlearning;
+
+import static linkedinlearning.LinkedInLearningApiHelper.Content;
+import static linkedinlearning.LinkedInLearningApiHelper.LearningPath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.amazon.speech.speechlet.Session;
+
+/**
+ * The results listed to the user, kept in the session between turns as a single attribute
+ * holding a flat list of slugs and titles: {@code ["slug0", "title0", "slug1", "title1", ...]}.
+ *
+ * <p>Alexa sends the session attributes with every request and back with every response, so
+ * one list of strings keeps both small and avoids Jackson binding an object per item. Sessions
+ * started before the list was introduced, with an attribute per index holding a
+ * {@code {"title", "slug"}} object, are still read.
+ *
+ * <p>Learning paths cannot be played, so the indexes of any among the items are kept in a
+ * second attribute, which is only there when there are some.
+ */
+final class SessionItems {
+
+  /**
+   * The key of the packed list in the session attributes.
+   */
+  static final String SESSION_ITEMS = "items";
+
+  /**
+   * The key of the indexes of the learning paths among the items.
+   */
+  static final String SESSION_LEARNING_PATHS = "paths";
+
+  private SessionItems() {
+  }
+
+  /**
+   * Replaces the listed items of the session with {@code items}.
+   */
+  static void set(Session session, List<Content> items) {
+    List<String> packed = new ArrayList<String>(items.size() * 2);
+    List<Integer> learningPaths = new ArrayList<Integer>();
+    for (Content item : items) {
+      if (item instanceof LearningPath) {
+	learningPaths.add(packed.size() / 2);
+      }
+      packed.add(item.slug);
+      packed.add(item.title);
+    }
+    session.setAttribute(SESSION_ITEMS, packed);
+    if (learningPaths.isEmpty()) {
+      session.removeAttribute(SESSION_LEARNING_PATHS);
+    } else {
+      session.setAttribute(SESSION_LEARNING_PATHS, learningPaths);
+    }
+  }
+
+  /**
+   * Returns the listed item at {@code index}, or {@code null} if there is none.
+   */
+  static Content get(Session session, int index) {
+    Object packed = session.getAttribute(SESSION_ITEMS);
+    if (packed instanceof List) {
+      List<?> values = (List<?>) packed;
+      if (index < 0 || 2 * index + 1 >= values.size()) {
+	return null;
+      }
+      String title = string(values.get(2 * index + 1));
+      String slug = string(values.get(2 * index));
+      return isLearningPath(session, index) ? new LearningPath(title, slug) : new Content(title, slug);
+    }
+
+    Object legacy = session.getAttribute(Integer.toString(index));
+    if (legacy instanceof Content) {
+      return (Content) legacy;
+    } else if (legacy instanceof Map) {
+      Map<?, ?> item = (Map<?, ?>) legacy;
+      return new Content(string(item.get("title")), string(item.get("slug")));
+    }
+    return null;
+  }
+
+  /**
+   * Returns the index of the first item from {@code index} on that can be played, or -1 if there
+   * is none.
+   */
+  static int nextPlayable(Session session, int index) {
+    for (int i = Math.max(0, index); ; i++) {
+      Content item = get(session, i);
+      if (item == null) {
+	return -1;
+      } else if (item.slug != null && !(item instanceof LearningPath)) {
+	return i;
+      }
+    }
+  }
+
+  private static boolean isLearningPath(Session session, int index) {
+    Object learningPaths = session.getAttribute(SESSION_LEARNING_PATHS);
+    if (learningPaths instanceof List) {
+      for (Object learningPath : (List<?>) learningPaths) {
+	if (learningPath instanceof Number && ((Number) learningPath).intValue() == index) {
+	  return true;
+	}
+      }
+    }
+    return false;
+  }
+
+  private static String string(Object value) {
+    return (value == null) ? null : value.toString();
+  }
+}
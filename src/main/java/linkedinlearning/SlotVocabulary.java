@@ -0,0 +1,187 @@
+package linkedinlearning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The closed vocabulary of the keyword slot types (LIST_OF_TOPICS and LIST_OF_SOFTWARE), loaded
+ * once from the slot type files packaged on the classpath. Categories are resolved by
+ * {@link CategoryLookup} instead, so a topic such as "courses" is searched for as spoken.
+ *
+ * <p>Every listed value, and the usual spoken variants of it (case, periods, hyphens and
+ * spacing), maps to an immutable {@link Entry} carrying the canonical query to search for and
+ * the search cache keys of that query. Values as Alexa sends them resolve with a single hash
+ * lookup and no string processing; anything else is normalized once and looked up again.
+ */
+public final class SlotVocabulary {
+  private static final Logger log = LoggerFactory.getLogger(SlotVocabulary.class);
+
+  private static final String RESOURCE_DIR = "/linkedinlearning/speechAssets/customSlotTypes/";
+
+  private static final String[] SEARCH_CATEGORIES = { "COURSE", "VIDEO", "LEARNING_PATH" };
+
+  private static final SlotVocabulary DEFAULT = load();
+
+  /**
+   * A resolved slot value.
+   */
+  public static final class Entry {
+    private final String _slotType;
+    private final String _query;
+    private final Map<String, String> _cacheKeys;
+
+    Entry(String slotType, String query) {
+      _slotType = slotType;
+      _query = query;
+      Map<String, String> cacheKeys = new HashMap<String, String>();
+      for (String category : SEARCH_CATEGORIES) {
+	cacheKeys.put(category, LinkedInLearningApiHelper.searchKey(category, query));
+      }
+      _cacheKeys = Collections.unmodifiableMap(cacheKeys);
+    }
+
+    public String getSlotType() {
+      return _slotType;
+    }
+
+    /**
+     * The canonical search query.
+     */
+    public String getQuery() {
+      return _query;
+    }
+
+    /**
+     * The search cache key of this query in {@code category}.
+     */
+    public String getCacheKey(String category) {
+      return _cacheKeys.get(category);
+    }
+  }
+
+  private final Map<String, Entry> _exact;
+  private final Map<String, Entry> _normalized;
+
+  private SlotVocabulary(Map<String, Entry> exact, Map<String, Entry> normalized) {
+    _exact = exact;
+    _normalized = normalized;
+  }
+
+  public static SlotVocabulary getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the entry for a slot value, or {@code null} if it is not part of the vocabulary.
+   */
+  public Entry resolve(String value) {
+    if (value == null) {
+      return null;
+    }
+    Entry entry = _exact.get(value);
+    return (entry != null) ? entry : _normalized.get(normalize(value));
+  }
+
+  public int size() {
+    return _exact.size();
+  }
+
+  /**
+   * Starts warming the search cache for the given topics in the background, one at a time, with
+   * speculative calls that give way to customers' requests.
+   */
+  public void warm(List<String> values) {
+    List<Entry> entries = new ArrayList<Entry>();
+    for (String value : values) {
+      Entry entry = resolve(value);
+      if (entry != null) {
+	entries.add(entry);
+      }
+    }
+    LinkedInLearningApiHelper.submit(() -> {
+	for (Entry entry : entries) {
+	  try {
+	    LinkedInLearningApiHelper.warmSearchSummary("COURSE", entry.getQuery());
+	  } catch (LearningApiUnavailableException e) {
+	    log.debug("Skipping warming search cache for {}: {}", entry.getQuery(), e.getMessage());
+	  } catch (Exception e) {
+	    log.warn("Unable to warm search cache for {}", entry.getQuery(), e);
+	  }
+	}
+      });
+  }
+
+  /**
+   * Lower-cases the value and drops periods, hyphens and whitespace, so "Back-End", "back end"
+   * and "backend" all normalize alike.
+   */
+  static String normalize(String value) {
+    StringBuilder normalized = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c != '.' && c != '-' && !Character.isWhitespace(c)) {
+	normalized.append(Character.toLowerCase(c));
+      }
+    }
+    return normalized.toString();
+  }
+
+  private static SlotVocabulary load() {
+    Map<String, Entry> exact = new HashMap<String, Entry>();
+    Map<String, Entry> normalized = new HashMap<String, Entry>();
+    try {
+      loadValues("LIST_OF_TOPICS", exact, normalized);
+      loadValues("LIST_OF_SOFTWARE", exact, normalized);
+    } catch (IOException e) {
+      log.error("Unable to load slot vocabulary, slot values will be searched as spoken", e);
+    }
+    return new SlotVocabulary(Collections.unmodifiableMap(exact), Collections.unmodifiableMap(normalized));
+  }
+
+  private static void loadValues(String slotType, Map<String, Entry> exact, Map<String, Entry> normalized)
+    throws IOException {
+    InputStream in = SlotVocabulary.class.getResourceAsStream(RESOURCE_DIR + slotType);
+    if (in == null) {
+      log.warn("Slot type {} is not on the classpath", slotType);
+      return;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+	String value = line.trim();
+	if (value.isEmpty()) {
+	  continue;
+	}
+	Entry entry = new Entry(slotType, value.toLowerCase(Locale.US));
+
+	// Earlier lists win for values listed more than once, e.g. topics over software.
+	for (String variant : new String[] { value, value.toLowerCase(Locale.US), value.toUpperCase(Locale.US), capitalize(value) }) {
+	  if (!exact.containsKey(variant)) {
+	    exact.put(variant, entry);
+	  }
+	}
+	String key = normalize(value);
+	if (!normalized.containsKey(key)) {
+	  normalized.put(key, entry);
+	}
+      }
+    }
+  }
+
+  private static String capitalize(String value) {
+    return value.isEmpty() ? value : Character.toUpperCase(value.charAt(0)) + value.substring(1);
+  }
+}
@@ -0,0 +1,144 @@
+package linkedinlearning.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import linkedinlearning.metrics.RequestMetrics;
+
+/**
+ * A bounded, thread-safe cache with least-recently-used eviction and a per-entry expiry time.
+ * Instances are meant to be held in static fields so they survive across warm Lambda invocations.
+ *
+ * <p>Hits, misses (including expired entries) and evictions are counted so callers can report
+ * the effectiveness of each cache; hits and misses are also recorded in the current
+ * {@link RequestMetrics}.
+ */
+public class ExpiringLruCache<K, V> {
+
+  private static final class Entry<V> {
+    final V value;
+    final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final String _name;
+  private final int _maxSize;
+  private final long _defaultTtlMillis;
+  private final LinkedHashMap<K, Entry<V>> _entries;
+
+  private long _hits;
+  private long _misses;
+  private long _evictions;
+
+  public ExpiringLruCache(String name, int maxSize, long defaultTtlMillis) {
+    _name = name;
+    _maxSize = maxSize;
+    _defaultTtlMillis = defaultTtlMillis;
+    _entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+	if (size() > _maxSize) {
+	  _evictions++;
+	  return true;
+	}
+	return false;
+      }
+    };
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * Returns the cached value, or {@code null} if it is absent or has expired.
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = _entries.get(key);
+    if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+      _hits++;
+      RequestMetrics.recordCacheAccess(_name, true);
+      return entry.value;
+    }
+    _misses++;
+    RequestMetrics.recordCacheAccess(_name, false);
+    return null;
+  }
+
+  /**
+   * Returns the cached value even if it has expired, without touching the hit/miss counters.
+   * Intended for serving stale data while a dependency is unavailable.
+   */
+  public synchronized V getStale(K key) {
+    Entry<V> entry = _entries.get(key);
+    return (entry == null) ? null : entry.value;
+  }
+
+  /**
+   * Returns the time at which the entry for {@code key} expires, or 0 if there is none.
+   */
+  public synchronized long getExpiresAt(K key) {
+    Entry<V> entry = _entries.get(key);
+    return (entry == null) ? 0L : entry.expiresAt;
+  }
+
+  public void put(K key, V value) {
+    put(key, value, System.currentTimeMillis() + _defaultTtlMillis);
+  }
+
+  public synchronized void put(K key, V value, long expiresAt) {
+    _entries.put(key, new Entry<V>(value, expiresAt));
+  }
+
+  public synchronized void remove(K key) {
+    _entries.remove(key);
+  }
+
+  public synchronized void clear() {
+    _entries.clear();
+  }
+
+  /**
+   * Drops all expired entries.
+   */
+  public synchronized void purgeExpired() {
+    long now = System.currentTimeMillis();
+    for (Iterator<Entry<V>> it = _entries.values().iterator(); it.hasNext(); ) {
+      if (it.next().expiresAt <= now) {
+	it.remove();
+      }
+    }
+  }
+
+  public synchronized int size() {
+    return _entries.size();
+  }
+
+  public synchronized long getHits() {
+    return _hits;
+  }
+
+  public synchronized long getMisses() {
+    return _misses;
+  }
+
+  public synchronized long getEvictions() {
+    return _evictions;
+  }
+
+  public synchronized double getHitRatio() {
+    long lookups = _hits + _misses;
+    return (lookups == 0) ? 0.0 : (double) _hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return _name + "{size=" + _entries.size() + ", hits=" + _hits + ", misses=" + _misses
+      + ", evictions=" + _evictions + "}";
+  }
+}
@@ -0,0 +1,61 @@
+package linkedinlearning.metrics;
+
+import java.io.PrintStream;
+
+/**
+ * Writes each request as a line in CloudWatch embedded metric format, from which CloudWatch
+ * extracts the metrics with the intent as dimension: the time of every phase in milliseconds
+ * and the hits and misses of every cache the request used, e.g. {@code searchCacheHits}.
+ *
+ * <p>Lines go to stdout rather than through log4j, since CloudWatch only extracts metrics from
+ * log events that are nothing but the JSON document.
+ */
+public class EmfMetricsRegistry implements MetricsRegistry {
+
+  private final PrintStream _out;
+  private final String _namespace;
+
+  public EmfMetricsRegistry(PrintStream out, String namespace) {
+    _out = out;
+    _namespace = namespace;
+  }
+
+  @Override
+  public void record(RequestMetrics metrics) {
+    StringBuilder definitions = new StringBuilder(512);
+    StringBuilder values = new StringBuilder(256);
+    for (RequestMetrics.Phase phase : RequestMetrics.Phase.values()) {
+      metric(definitions, values, phase.getMetricName(), "Milliseconds", millis(metrics.getNanos(phase)));
+    }
+    for (String cache : metrics.getCacheNames()) {
+      metric(definitions, values, cache + "CacheHits", "Count", Long.toString(metrics.getCacheHits(cache)));
+      metric(definitions, values, cache + "CacheMisses", "Count", Long.toString(metrics.getCacheMisses(cache)));
+    }
+
+    StringBuilder line = new StringBuilder(definitions.length() + values.length() + 256);
+    line.append("{\"_aws\":{\"Timestamp\":").append(System.currentTimeMillis())
+      .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"").append(escape(_namespace))
+      .append("\",\"Dimensions\":[[\"Intent\"]],\"Metrics\":[").append(definitions)
+      .append("]}]},\"Intent\":\"").append(escape(metrics.getName())).append('"')
+      .append(values).append('}');
+    _out.println(line);
+  }
+
+  private static void metric(StringBuilder definitions, StringBuilder values, String name, String unit, String value) {
+    if (definitions.length() > 0) {
+      definitions.append(',');
+    }
+    definitions.append("{\"Name\":\"").append(name).append("\",\"Unit\":\"").append(unit).append("\"}");
+    values.append(",\"").append(name).append("\":").append(value);
+  }
+
+  private static String millis(long nanos) {
+    long micros = nanos / 1000;
+    return (micros / 1000) + "." + (char) ('0' + micros / 100 % 10) + (char) ('0' + micros / 10 % 10)
+      + (char) ('0' + micros % 10);
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
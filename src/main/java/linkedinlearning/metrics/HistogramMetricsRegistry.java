@@ -0,0 +1,107 @@
+package linkedinlearning.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import linkedinlearning.LatencyHistogram;
+
+/**
+ * Keeps rolling histograms of the phase times of every intent, in microseconds, and counts
+ * cache hits and misses, e.g. to report where a load test's latency went.
+ */
+public class HistogramMetricsRegistry implements MetricsRegistry {
+
+  private static final RequestMetrics.Phase[] PHASES = RequestMetrics.Phase.values();
+
+  private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  private final class IntentStats {
+    final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+    final Map<String, long[]> caches = new TreeMap<String, long[]>();
+
+    IntentStats() {
+      for (int i = 0; i < phases.length; i++) {
+	phases[i] = new LatencyHistogram(_windowMillis);
+      }
+    }
+
+    synchronized void addCacheAccesses(String cache, long hits, long misses) {
+      long[] counts = caches.get(cache);
+      if (counts == null) {
+	counts = new long[2];
+	caches.put(cache, counts);
+      }
+      counts[0] += hits;
+      counts[1] += misses;
+    }
+  }
+
+  private final long _windowMillis;
+
+  private final ConcurrentMap<String, IntentStats> _intents = new ConcurrentHashMap<String, IntentStats>();
+
+  /**
+   * @param windowMillis
+   *            the histograms' window; requests older than one to two windows are forgotten
+   */
+  public HistogramMetricsRegistry(long windowMillis) {
+    _windowMillis = windowMillis;
+  }
+
+  @Override
+  public void record(RequestMetrics metrics) {
+    IntentStats stats = _intents.get(metrics.getName());
+    if (stats == null) {
+      _intents.putIfAbsent(metrics.getName(), new IntentStats());
+      stats = _intents.get(metrics.getName());
+    }
+    for (RequestMetrics.Phase phase : PHASES) {
+      stats.phases[phase.ordinal()].record(metrics.getNanos(phase) / 1000);
+    }
+    for (String cache : metrics.getCacheNames()) {
+      stats.addCacheAccesses(cache, metrics.getCacheHits(cache), metrics.getCacheMisses(cache));
+    }
+  }
+
+  /**
+   * Returns the phase time percentiles of the intent in microseconds, or {@code null} if it has
+   * not been seen.
+   */
+  public LatencyHistogram getHistogram(String intent, RequestMetrics.Phase phase) {
+    IntentStats stats = _intents.get(intent);
+    return (stats == null) ? null : stats.phases[phase.ordinal()];
+  }
+
+  /**
+   * Returns a table per intent of the percentiles of every phase in milliseconds and the hit
+   * ratio of every cache.
+   */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    for (Map.Entry<String, IntentStats> entry : new TreeMap<String, IntentStats>(_intents).entrySet()) {
+      IntentStats stats = entry.getValue();
+      report.append(String.format("%s (%d requests)%n", entry.getKey(),
+				  stats.phases[RequestMetrics.Phase.TOTAL.ordinal()].getCount()));
+      report.append(String.format("  %-18s %9s %9s %9s %9s%n", "phase", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms"));
+      for (RequestMetrics.Phase phase : PHASES) {
+	LatencyHistogram histogram = stats.phases[phase.ordinal()];
+	report.append(String.format("  %-18s", phase.getMetricName()));
+	for (double percentile : PERCENTILES) {
+	  report.append(String.format(" %9.2f", histogram.getPercentile(percentile) / 1000.0));
+	}
+	report.append(String.format("%n"));
+      }
+      synchronized (stats) {
+	for (Map.Entry<String, long[]> cache : stats.caches.entrySet()) {
+	  long hits = cache.getValue()[0];
+	  long total = hits + cache.getValue()[1];
+	  report.append(String.format("  %-18s %9.3f hit ratio (%d lookups)%n", cache.getKey() + " cache",
+				      (total == 0) ? 0.0 : (double) hits / total, total));
+	}
+      }
+    }
+    return report.toString();
+  }
+}
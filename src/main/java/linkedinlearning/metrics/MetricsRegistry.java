@@ -0,0 +1,11 @@
+package linkedinlearning.metrics;
+
+/**
+ * Receives the metrics of every finished request, e.g. to log them for CloudWatch or to
+ * aggregate them in-process. Called on the request's thread, so implementations must be
+ * thread-safe and quick.
+ */
+public interface MetricsRegistry {
+
+  void record(RequestMetrics metrics);
+}
@@ -0,0 +1,226 @@
+package linkedinlearning.metrics;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import linkedinlearning.LinkedInLearningConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Where the time of one request went: Learning API calls and their parsing, DynamoDB loads and
+ * saves, the intent itself and building the response, plus the cache hits and misses the
+ * request had.
+ *
+ * <p>The request handler {@link #begin() begins} a request on its thread and
+ * {@link #finish() finishes} it, which hands the metrics to the {@link MetricsRegistry}. Code in
+ * between records into the current request through the static methods, which do nothing when
+ * there is none, e.g. in benchmarks or background refreshes. Work handed to other threads is
+ * attributed to the request with {@link #propagate(Callable)}.
+ *
+ * <p>Only requests named by {@link #startIntent(String)} are reported.
+ */
+public final class RequestMetrics {
+  private static final Logger log = LoggerFactory.getLogger(RequestMetrics.class);
+
+  public enum Phase {
+    /** Learning API calls, including parsing the responses; summed over parallel calls. */
+    API("ApiTime"),
+    /** Parsing Learning API responses. */
+    PARSE("ParseTime"),
+    DYNAMODB_LOAD("DynamoDbLoadTime"),
+    /** Saving user data, or waiting for write-behind saves to finish. */
+    DYNAMODB_SAVE("DynamoDbSaveTime"),
+    /** The speechlet's {@code onIntent}. */
+    INTENT("IntentTime"),
+    /** Serializing and writing the response after the intent returned. */
+    RESPONSE_BUILD("ResponseBuildTime"),
+    /** From {@link RequestMetrics#begin()} to {@link RequestMetrics#finish()}. */
+    TOTAL("TotalTime");
+
+    private final String _metricName;
+
+    Phase(String metricName) {
+      _metricName = metricName;
+    }
+
+    public String getMetricName() {
+      return _metricName;
+    }
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<RequestMetrics>();
+
+  private static volatile MetricsRegistry _registry =
+    LinkedInLearningConfig.getBoolean("linkedinlearning.metrics.emf", true)
+    ? new EmfMetricsRegistry(System.out, LinkedInLearningConfig.getString("linkedinlearning.metrics.namespace", "LinkedInLearning"))
+    : null;
+
+  private final long _start = System.nanoTime();
+  private final AtomicLongArray _nanos = new AtomicLongArray(PHASES.length);
+  private final TreeMap<String, long[]> _caches = new TreeMap<String, long[]>();
+  private volatile String _name;
+  private long _intentStart;
+  private long _intentEnd;
+
+  private RequestMetrics() {
+  }
+
+  /**
+   * Replaces the registry finished requests are reported to, or disables request metrics with
+   * {@code null}.
+   */
+  public static void setRegistry(MetricsRegistry registry) {
+    _registry = registry;
+  }
+
+  public static MetricsRegistry getRegistry() {
+    return _registry;
+  }
+
+  /**
+   * Begins a request on the current thread, unless metrics are disabled.
+   */
+  public static void begin() {
+    if (_registry != null) {
+      CURRENT.set(new RequestMetrics());
+    }
+  }
+
+  /**
+   * Ends the current thread's request and reports it if it was named.
+   */
+  public static void finish() {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics == null) {
+      return;
+    }
+    CURRENT.remove();
+    metrics.add(Phase.TOTAL, System.nanoTime() - metrics._start);
+
+    MetricsRegistry registry = _registry;
+    if (metrics._name != null && registry != null) {
+      try {
+	registry.record(metrics);
+      } catch (RuntimeException e) {
+	log.warn("Unable to record request metrics", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the current thread's request, or {@code null}.
+   */
+  public static RequestMetrics current() {
+    return CURRENT.get();
+  }
+
+  public static void startIntent(String name) {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics != null) {
+      metrics._name = name;
+      metrics._intentStart = System.nanoTime();
+    }
+  }
+
+  public static void endIntent() {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics != null && metrics._intentStart != 0) {
+      metrics._intentEnd = System.nanoTime();
+      metrics.add(Phase.INTENT, metrics._intentEnd - metrics._intentStart);
+    }
+  }
+
+  /**
+   * Marks the response as written; the time since the intent returned is its build time.
+   */
+  public static void responseWritten() {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics != null && metrics._intentEnd != 0) {
+      metrics.add(Phase.RESPONSE_BUILD, System.nanoTime() - metrics._intentEnd);
+    }
+  }
+
+  public static void record(Phase phase, long nanos) {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics != null) {
+      metrics.add(phase, nanos);
+    }
+  }
+
+  public static void recordCacheAccess(String cache, boolean hit) {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics != null) {
+      metrics.addCacheAccess(cache, hit);
+    }
+  }
+
+  /**
+   * Returns {@code task} bound to the current thread's request, so what it records is
+   * attributed to the request whichever thread runs it.
+   */
+  public static <T> Callable<T> propagate(Callable<T> task) {
+    RequestMetrics metrics = CURRENT.get();
+    if (metrics == null) {
+      return task;
+    }
+    return () -> {
+      RequestMetrics previous = CURRENT.get();
+      CURRENT.set(metrics);
+      try {
+	return task.call();
+      } finally {
+	if (previous == null) {
+	  CURRENT.remove();
+	} else {
+	  CURRENT.set(previous);
+	}
+      }
+    };
+  }
+
+  public void add(Phase phase, long nanos) {
+    _nanos.addAndGet(phase.ordinal(), nanos);
+  }
+
+  public synchronized void addCacheAccess(String cache, boolean hit) {
+    long[] counts = _caches.get(cache);
+    if (counts == null) {
+      counts = new long[2];
+      _caches.put(cache, counts);
+    }
+    counts[hit ? 0 : 1]++;
+  }
+
+  /**
+   * Returns the intent name, or {@code null} if the request was not an intent.
+   */
+  public String getName() {
+    return _name;
+  }
+
+  public long getNanos(Phase phase) {
+    return _nanos.get(phase.ordinal());
+  }
+
+  public synchronized Set<String> getCacheNames() {
+    return Collections.unmodifiableSet(new TreeSet<String>(_caches.keySet()));
+  }
+
+  public synchronized long getCacheHits(String cache) {
+    long[] counts = _caches.get(cache);
+    return (counts == null) ? 0 : counts[0];
+  }
+
+  public synchronized long getCacheMisses(String cache) {
+    long[] counts = _caches.get(cache);
+    return (counts == null) ? 0 : counts[1];
+  }
+}
@@ -1,5 +1,7 @@
 package linkedinlearning.storage;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class LearningUserData {
 
   private String title;
@@ -12,10 +14,21 @@ public class LearningUserData {
 
   private long totalVideos;
 
+  private Long version;
+
   public LearningUserData() {
     // public no-arg constructor required for DynamoDBMapper marshalling
   }
 
+  public LearningUserData(LearningUserData other) {
+    this.title = other.title;
+    this.slug = other.slug;
+    this.start = other.start;
+    this.offset = other.offset;
+    this.totalVideos = other.totalVideos;
+    this.version = other.version;
+  }
+
   public String getTitle() {
     return title;
   }
@@ -55,4 +68,18 @@ public class LearningUserData {
   public void setTotalVideos(Long totalVideos) {
     this.totalVideos = totalVideos;
   }
+
+  /**
+   * The stored item's version when this data was loaded, or {@code null} if it has never been
+   * saved. Kept out of the marshalled JSON; it is a separate attribute of the item.
+   */
+  @JsonIgnore
+  public Long getVersion() {
+    return version;
+  }
+
+  @JsonIgnore
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -8,7 +8,17 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
+/**
+ * The stored form of a customer's {@link LearningUserData}. Every field is its own attribute
+ * ({@code Title}, {@code Slug}, {@code Start}, {@code Offset}, {@code TotalVideos}) alongside the
+ * item {@code Version}, so fields can be updated in place with conditional update expressions.
+ *
+ * <p>Items written in the older JSON format keep the title and slug (and, before the position
+ * had its own attributes, the whole record) in the {@code Data} attribute. While {@code Data} is
+ * present it is authoritative for the title and slug; native writes remove it.
+ */
 @DynamoDBTable(tableName = "LinkedInLearningUserData")
 public class LearningUserDataItem {
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
@@ -17,6 +27,60 @@ public class LearningUserDataItem {
 
   private LearningUserData userData;
 
+  private String title;
+
+  private String slug;
+
+  private Long start;
+
+  private Long offset;
+
+  private Long totalVideos;
+
+  private Long version;
+
+  /**
+   * Builds the item to store for {@code userData}.
+   */
+  public static LearningUserDataItem of(String customerId, LearningUserData userData) {
+    LearningUserDataItem item = new LearningUserDataItem();
+    item.setCustomerId(customerId);
+    item.setUserData(userData);
+    item.setTitle(userData.getTitle());
+    item.setSlug(userData.getSlug());
+    item.setStart(userData.getStart());
+    item.setOffset(userData.getOffset());
+    item.setTotalVideos(userData.getTotalVideos());
+    item.setVersion(userData.getVersion());
+    return item;
+  }
+
+  /**
+   * Returns the user data held by this item, falling back to the legacy {@code Data} attribute
+   * for anything the item does not carry natively.
+   */
+  public LearningUserData toUserData() {
+    LearningUserData data;
+    if (userData != null) {
+      data = new LearningUserData(userData);
+    } else {
+      data = new LearningUserData();
+      data.setTitle(title);
+      data.setSlug(slug);
+    }
+    if (start != null) {
+      data.setStart(start);
+    }
+    if (offset != null) {
+      data.setOffset(offset);
+    }
+    if (totalVideos != null) {
+      data.setTotalVideos(totalVideos);
+    }
+    data.setVersion(version);
+    return data;
+  }
+
   @DynamoDBHashKey(attributeName = "CustomerId")
   public String getCustomerId() {
     return customerId;
@@ -26,6 +90,9 @@ public class LearningUserDataItem {
     this.customerId = customerId;
   }
 
+  /**
+   * The legacy JSON form of the user data.
+   */
   @DynamoDBAttribute(attributeName = "Data")
   @DynamoDBMarshalling(marshallerClass = LearningUserDataMarshaller.class)
   public LearningUserData getUserData() {
@@ -36,17 +103,83 @@ public class LearningUserDataItem {
     this.userData = userData;
   }
 
+  @DynamoDBAttribute(attributeName = "Title")
+  public String getTitle() {
+    return title;
+  }
+
+  public void setTitle(String title) {
+    this.title = title;
+  }
+
+  @DynamoDBAttribute(attributeName = "Slug")
+  public String getSlug() {
+    return slug;
+  }
+
+  public void setSlug(String slug) {
+    this.slug = slug;
+  }
+
+  @DynamoDBAttribute(attributeName = "Start")
+  public Long getStart() {
+    return start;
+  }
+
+  public void setStart(Long start) {
+    this.start = start;
+  }
+
+  @DynamoDBAttribute(attributeName = "Offset")
+  public Long getOffset() {
+    return offset;
+  }
+
+  public void setOffset(Long offset) {
+    this.offset = offset;
+  }
+
+  @DynamoDBAttribute(attributeName = "TotalVideos")
+  public Long getTotalVideos() {
+    return totalVideos;
+  }
+
+  public void setTotalVideos(Long totalVideos) {
+    this.totalVideos = totalVideos;
+  }
+
+  /**
+   * Incremented on every write; position updates are conditional on it so a stale pause cannot
+   * overwrite a newer write from another device.
+   */
+  @DynamoDBAttribute(attributeName = "Version")
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
   /**
    * A {@link DynamoDBMarshaller} that provides marshalling and unmarshalling logic for
    * {@link LearningUserData} values so that they can be persisted in the database as String.
+   * Only the title and slug are written; the playback position has its own attributes.
    */
   public static class LearningUserDataMarshaller implements
 						   DynamoDBMarshaller<LearningUserData> {
 
     @Override
       public String marshall(LearningUserData userData) {
+      ObjectNode node = OBJECT_MAPPER.createObjectNode();
+      if (userData.getTitle() != null) {
+	node.put("title", userData.getTitle());
+      }
+      if (userData.getSlug() != null) {
+	node.put("slug", userData.getSlug());
+      }
       try {
-	return OBJECT_MAPPER.writeValueAsString(userData);
+	return OBJECT_MAPPER.writeValueAsString(node);
       } catch (JsonProcessingException e) {
 	throw new IllegalStateException("Unable to marshall user data", e);
       }
@@ -1,32 +1,334 @@
 package linkedinlearning.storage;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import linkedinlearning.LinkedInLearningConfig;
+import linkedinlearning.cache.ExpiringLruCache;
+import linkedinlearning.metrics.RequestMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.amazon.speech.speechlet.Session;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 
+/**
+ * Loads and saves {@link LearningUserData}. Saves are write-behind: they return immediately and
+ * are written by a background thread, with repeated saves for the same customer coalesced into
+ * one write. Callers must {@link #flush()} before the invocation returns so nothing is lost when
+ * the container is frozen.
+ *
+ * <p>Loads are read-through a short-lived per-customer cache that saves keep up to date, so a
+ * conversation on one device does not go back to the table on every turn.
+ *
+ * <p>Playback position saves only update the start and offset, and only if nobody else has
+ * written the item since it was read. A position that lost such a race is dropped rather than
+ * overwriting newer state from another device.
+ */
 public class LinkedInLearningDao {
+  private static final Logger log = LoggerFactory.getLogger(LinkedInLearningDao.class);
+
+  private static final String WARM_UP_CUSTOMER_ID = "linkedinlearning.warmup";
+
+  /**
+   * A queued write; {@code positionOnly} writes are conditional on the item's version.
+   * {@code videosStarted} is added to the stored total rather than overwriting it.
+   */
+  private static final class PendingWrite {
+    final LearningUserDataItem item;
+    final boolean positionOnly;
+    final long videosStarted;
+
+    PendingWrite(LearningUserDataItem item, boolean positionOnly, long videosStarted) {
+      this.item = item;
+      this.positionOnly = positionOnly;
+      this.videosStarted = videosStarted;
+    }
+  }
+
+  /**
+   * The version a completed write replaced and the version it produced.
+   */
+  private static final class WrittenVersion {
+    final Long from;
+    final long to;
+
+    WrittenVersion(Long from, long to) {
+      this.from = from;
+      this.to = to;
+    }
+  }
+
+  private static final int MAX_WRITTEN_VERSIONS = 1024;
+
   private final LinkedInLearningDbClient _dbClient;
 
+  private final boolean _writeBehind;
+
+  private final long _flushTimeoutMillis;
+
+  /**
+   * Copies of the last loaded or saved data, by customer id.
+   */
+  private final ExpiringLruCache<String, LearningUserData> _cache;
+
+  /**
+   * Items waiting to be written, by customer id. Guarded by {@code this}.
+   */
+  private final Map<String, PendingWrite> _pending = new LinkedHashMap<String, PendingWrite>();
+
+  /**
+   * Items currently being written, by customer id. Guarded by {@code this}.
+   */
+  private final Map<String, PendingWrite> _writing = new LinkedHashMap<String, PendingWrite>();
+
+  /**
+   * The last version each recently written customer moved through, so a save based on a copy
+   * served while that write was in flight can be moved onto the version it produced. Guarded by
+   * {@code this}.
+   */
+  private final Map<String, WrittenVersion> _written = new LinkedHashMap<String, WrittenVersion>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, WrittenVersion> eldest) {
+	return size() > MAX_WRITTEN_VERSIONS;
+      }
+    };
+
+  private final ExecutorService _writer = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "user-data-writer");
+      t.setDaemon(true);
+      return t;
+    });
+
   public LinkedInLearningDao(LinkedInLearningDbClient dbClient) {
+    this(dbClient,
+	 LinkedInLearningConfig.getBoolean("linkedinlearning.storage.writeBehind", true),
+	 LinkedInLearningConfig.getLong("linkedinlearning.storage.flushTimeoutMillis", 2000L),
+	 new ExpiringLruCache<String, LearningUserData>("userData",
+							LinkedInLearningConfig.getInt("linkedinlearning.cache.userData.maxSize", 1000),
+							LinkedInLearningConfig.getLong("linkedinlearning.cache.userData.ttlMillis", 60 * 1000L)));
+  }
+
+  public LinkedInLearningDao(LinkedInLearningDbClient dbClient, boolean writeBehind, long flushTimeoutMillis,
+			     ExpiringLruCache<String, LearningUserData> cache) {
     _dbClient = dbClient;
+    _writeBehind = writeBehind;
+    _flushTimeoutMillis = flushTimeoutMillis;
+    _cache = cache;
+  }
+
+  public ExpiringLruCache<String, LearningUserData> getCache() {
+    return _cache;
+  }
+
+  /**
+   * Loads a record that does not exist, so the DynamoDB client has resolved its credentials and
+   * connected, and the mapper has modelled the item class, before the first customer needs it.
+   */
+  public void warmUp() {
+    LearningUserDataItem item = new LearningUserDataItem();
+    item.setCustomerId(WARM_UP_CUSTOMER_ID);
+    try {
+      _dbClient.load(item);
+    } catch (RuntimeException e) {
+      log.warn("Unable to warm up the DynamoDB client", e);
+    }
   }
 
   public LearningUserData getUserData(Session session) {
+    String customerId = session.getUser().getUserId();
+
+    // Serve our own unwritten saves so callers always read what they last saved.
+    synchronized (this) {
+      PendingWrite unwritten = _pending.get(customerId);
+      if (unwritten == null) {
+	unwritten = _writing.get(customerId);
+      }
+      if (unwritten != null) {
+	return unwritten.item.toUserData();
+      }
+    }
+
+    LearningUserData cached = _cache.get(customerId);
+    if (cached != null) {
+      return new LearningUserData(cached);
+    }
+
     LearningUserDataItem item = new LearningUserDataItem();
-    item.setCustomerId(session.getUser().getUserId());
+    item.setCustomerId(customerId);
 
+    long start = System.nanoTime();
     item = _dbClient.load(item);
-    
-    if (item == null) {
-      return new LearningUserData();
+    RequestMetrics.record(RequestMetrics.Phase.DYNAMODB_LOAD, System.nanoTime() - start);
+
+    LearningUserData userData = (item == null) ? new LearningUserData() : item.toUserData();
+    _cache.put(customerId, new LearningUserData(userData));
+
+    if (log.isDebugEnabled()) {
+      log.debug("User data cache miss customerId={} found={} cacheSize={} hitRatio={}", customerId, item != null,
+		_cache.size(), _cache.getHitRatio());
     }
 
-    return item.getUserData();
+    return userData;
   }
 
+  /**
+   * Saves the whole record, e.g. when a new course starts playing.
+   */
   public void saveUserData(Session session, LearningUserData userData) {
-    LearningUserDataItem item = new LearningUserDataItem();
-    item.setCustomerId(session.getUser().getUserId());
-    item.setUserData(userData);
+    save(session, userData, false, 0L);
+  }
+
+  /**
+   * Saves the whole record when a new video starts playing, and counts it towards the customer's
+   * total videos. The count is added to the stored total, so {@code userData}'s own total is only
+   * used for what later reads see.
+   */
+  public void saveStartedVideo(Session session, LearningUserData userData) {
+    LearningUserData started = new LearningUserData(userData);
+    started.setTotalVideos(userData.getTotalVideos() + 1L);
+    save(session, started, false, 1L);
+  }
+
+  /**
+   * Saves only the playback start and offset of {@code userData}, which must have been obtained
+   * from {@link #getUserData(Session)}.
+   */
+  public void savePlaybackPosition(Session session, LearningUserData userData) {
+    save(session, userData, true, 0L);
+  }
 
-    _dbClient.save(item);
+  private void save(Session session, LearningUserData userData, boolean positionOnly, long videosStarted) {
+    // Copy so later changes by the caller do not race with the background write.
+    LearningUserDataItem item = LearningUserDataItem.of(session.getUser().getUserId(), new LearningUserData(userData));
+    synchronized (this) {
+      rebase(item);
+    }
+    _cache.put(item.getCustomerId(), item.toUserData());
+
+    if (!_writeBehind) {
+      write(new PendingWrite(item, positionOnly, videosStarted));
+      return;
+    }
+
+    synchronized (this) {
+      // Our own write may have completed since the rebase above.
+      rebase(item);
+      boolean idle = _pending.isEmpty();
+      PendingWrite queued = _pending.get(item.getCustomerId());
+      // A full save already queued for this customer must still write the title and slug, and
+      // still count the videos it started.
+      boolean coalescedPositionOnly = positionOnly && (queued == null || queued.positionOnly);
+      long coalescedVideosStarted = videosStarted + ((queued == null) ? 0L : queued.videosStarted);
+      _pending.put(item.getCustomerId(), new PendingWrite(item, coalescedPositionOnly, coalescedVideosStarted));
+      if (idle) {
+	_writer.execute(this::drain);
+      }
+    }
+  }
+
+  /**
+   * Blocks until every save made so far has been written, or the flush timeout passes.
+   */
+  public void flush() {
+    long start = System.nanoTime();
+    long deadline = System.currentTimeMillis() + _flushTimeoutMillis;
+    synchronized (this) {
+      while (!_pending.isEmpty() || !_writing.isEmpty()) {
+	long remaining = deadline - System.currentTimeMillis();
+	if (remaining <= 0) {
+	  log.warn("Timed out flushing user data, pending={}, writing={}", _pending.size(), _writing.size());
+	  break;
+	}
+	try {
+	  wait(remaining);
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  break;
+	}
+      }
+    }
+    RequestMetrics.record(RequestMetrics.Phase.DYNAMODB_SAVE, System.nanoTime() - start);
+  }
+
+  private void drain() {
+    while (true) {
+      PendingWrite write;
+      synchronized (this) {
+	Iterator<PendingWrite> it = _pending.values().iterator();
+	if (!it.hasNext()) {
+	  return;
+	}
+	write = it.next();
+	it.remove();
+	_writing.put(write.item.getCustomerId(), write);
+      }
+
+      try {
+	write(write);
+      } finally {
+	synchronized (this) {
+	  _writing.remove(write.item.getCustomerId());
+	  notifyAll();
+	}
+      }
+    }
+  }
+
+  private void write(PendingWrite write) {
+    LearningUserDataItem item = write.item;
+    long start = System.nanoTime();
+    try {
+      long version = write.positionOnly ? _dbClient.savePosition(item) : _dbClient.save(item, write.videosStarted);
+      advanceVersion(item.getCustomerId(), item.getVersion(), version);
+    } catch (ConditionalCheckFailedException e) {
+      log.info("Dropping stale playback position for customerId={}, version={}", item.getCustomerId(), item.getVersion());
+      _cache.remove(item.getCustomerId());
+    } catch (RuntimeException e) {
+      log.error("Unable to save user data for customerId={}", item.getCustomerId(), e);
+      // Do not keep serving data the table never received.
+      _cache.remove(item.getCustomerId());
+    } finally {
+      // Only counts for the request when it writes synchronously, on its own thread.
+      RequestMetrics.record(RequestMetrics.Phase.DYNAMODB_SAVE, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Moves the cached and queued data for the customer from the version our write replaced to the
+   * version it produced, so our own follow-up writes are not mistaken for stale ones.
+   */
+  private synchronized void advanceVersion(String customerId, Long oldVersion, long newVersion) {
+    _written.put(customerId, new WrittenVersion(oldVersion, newVersion));
+
+    PendingWrite queued = _pending.get(customerId);
+    if (queued != null && Objects.equals(queued.item.getVersion(), oldVersion)) {
+      queued.item.setVersion(newVersion);
+      queued.item.getUserData().setVersion(newVersion);
+    }
+
+    LearningUserData cached = _cache.getStale(customerId);
+    if (cached != null && Objects.equals(cached.getVersion(), oldVersion)) {
+      LearningUserData updated = new LearningUserData(cached);
+      updated.setVersion(newVersion);
+      _cache.put(customerId, updated);
+    }
+  }
+
+  /**
+   * Moves {@code item} onto the version our last write for the customer produced, if it is based
+   * on the version that write replaced, i.e. it was read from the write while it was in flight.
+   */
+  private void rebase(LearningUserDataItem item) {
+    WrittenVersion written = _written.get(item.getCustomerId());
+    if (written != null && Objects.equals(item.getVersion(), written.from)) {
+      item.setVersion(written.to);
+      item.getUserData().setVersion(written.to);
+    }
   }
 }
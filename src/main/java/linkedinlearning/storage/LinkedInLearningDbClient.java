@@ -1,20 +1,203 @@
 package linkedinlearning.storage;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import linkedinlearning.LinkedInLearningConfig;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
 
 public class LinkedInLearningDbClient {
+  private static final LearningUserDataItem.LearningUserDataMarshaller MARSHALLER =
+    new LearningUserDataItem.LearningUserDataMarshaller();
+
+  /**
+   * Expression placeholders and the attributes they stand for.
+   */
+  private static final String[][] ATTRIBUTE_NAMES = {
+    { "#data", "Data" },
+    { "#title", "Title" },
+    { "#slug", "Slug" },
+    { "#start", "Start" },
+    { "#offset", "Offset" },
+    { "#total", "TotalVideos" },
+    { "#version", "Version" },
+  };
+
   private final AmazonDynamoDBClient _dbClient;
 
+  private final String _tableName;
+
+  private final DynamoDBMapper _mapper;
+
+  private final boolean _nativeFormat;
+
   public LinkedInLearningDbClient(final AmazonDynamoDBClient dynamoDBClient) {
+    this(dynamoDBClient, null, true);
+  }
+
+  /**
+   * @param tableName
+   *            table to use instead of the one named on {@link LearningUserDataItem}, or
+   *            {@code null} for the default
+   * @param nativeFormat
+   *            whether to write the title and slug as their own attributes (migrating items away
+   *            from the JSON {@code Data} attribute) rather than as JSON
+   */
+  public LinkedInLearningDbClient(final AmazonDynamoDBClient dynamoDBClient, final String tableName,
+				  final boolean nativeFormat) {
     this._dbClient = dynamoDBClient;
+    this._nativeFormat = nativeFormat;
+    this._tableName = (tableName == null)
+      ? LearningUserDataItem.class.getAnnotation(DynamoDBTable.class).tableName()
+      : tableName;
+    this._mapper = (tableName == null)
+      ? new DynamoDBMapper(dynamoDBClient)
+      : new DynamoDBMapper(dynamoDBClient,
+			   new DynamoDBMapperConfig(DynamoDBMapperConfig.TableNameOverride.withTableNameReplacement(tableName)));
+  }
+
+  /**
+   * Builds a client from the {@code linkedinlearning.dynamodb.*} settings. The endpoint can be
+   * pointed at a local DynamoDB-compatible server for testing.
+   */
+  public static LinkedInLearningDbClient fromConfig() {
+    ClientConfiguration clientConfig = new ClientConfiguration();
+    clientConfig.setMaxConnections(LinkedInLearningConfig.getInt("linkedinlearning.dynamodb.maxConnections", 10));
+    clientConfig.setConnectionTimeout(LinkedInLearningConfig.getInt("linkedinlearning.dynamodb.connectTimeoutMillis", 1000));
+    clientConfig.setSocketTimeout(LinkedInLearningConfig.getInt("linkedinlearning.dynamodb.socketTimeoutMillis", 2000));
+    clientConfig.setRetryPolicy(PredefinedRetryPolicies.getDynamoDBDefaultRetryPolicyWithCustomMaxRetries(
+      LinkedInLearningConfig.getInt("linkedinlearning.dynamodb.maxRetries", 3)));
+    clientConfig.setUseTcpKeepAlive(true);
+
+    AmazonDynamoDBClient dynamoDBClient = new AmazonDynamoDBClient(clientConfig);
+    String endpoint = LinkedInLearningConfig.getString("linkedinlearning.dynamodb.endpoint", null);
+    if (endpoint != null) {
+      dynamoDBClient.setEndpoint(endpoint);
+    }
+
+    return new LinkedInLearningDbClient(dynamoDBClient,
+					LinkedInLearningConfig.getString("linkedinlearning.dynamodb.tableName", null),
+					!"json".equals(LinkedInLearningConfig.getString("linkedinlearning.storage.format", "native")));
   }
 
   public LearningUserDataItem load(final LearningUserDataItem dataItem) {
-    return (new DynamoDBMapper(_dbClient)).load(dataItem);
+    return _mapper.load(dataItem);
+  }
+
+  /**
+   * Writes the whole item, replacing the title, slug and playback position, and increments its
+   * version. The item's total is not written; see {@link #save(LearningUserDataItem, long)}.
+   *
+   * @return the item's new version
+   */
+  public long save(final LearningUserDataItem dataItem) {
+    return save(dataItem, 0L);
+  }
+
+  /**
+   * Writes the whole item like {@link #save(LearningUserDataItem)}, and adds
+   * {@code videosStarted} to the stored total in the same update, so concurrent writers do not
+   * lose each other's counts.
+   *
+   * @return the item's new version
+   */
+  public long save(final LearningUserDataItem dataItem, final long videosStarted) {
+    Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+    values.put(":start", number(dataItem.getStart()));
+    values.put(":offset", number(dataItem.getOffset()));
+    values.put(":one", number(1L));
+
+    StringBuilder set = new StringBuilder("SET #start = :start, #offset = :offset");
+    StringBuilder remove = new StringBuilder();
+    if (_nativeFormat) {
+      setOrRemove(set, remove, values, "#title", ":title", dataItem.getTitle());
+      setOrRemove(set, remove, values, "#slug", ":slug", dataItem.getSlug());
+      remove.append(remove.length() == 0 ? " REMOVE " : ", ").append("#data");
+    } else {
+      values.put(":data", new AttributeValue().withS(MARSHALLER.marshall(dataItem.toUserData())));
+      set.append(", #data = :data");
+      remove.append(" REMOVE #title, #slug");
+    }
+
+    set.append(remove).append(" ADD #version :one");
+    if (videosStarted != 0L) {
+      values.put(":videos", number(videosStarted));
+      set.append(", #total :videos");
+    }
+
+    return update(dataItem, set.toString(), null, values);
+  }
+
+  private static void setOrRemove(StringBuilder set, StringBuilder remove, Map<String, AttributeValue> values,
+				  String name, String placeholder, String value) {
+    if (value == null) {
+      remove.append(remove.length() == 0 ? " REMOVE " : ", ").append(name);
+    } else {
+      set.append(", ").append(name).append(" = ").append(placeholder);
+      values.put(placeholder, new AttributeValue().withS(value));
+    }
+  }
+
+  /**
+   * Updates only the playback start and offset, provided the stored version still matches the
+   * item's version, and increments the version.
+   *
+   * @return the item's new version
+   * @throws ConditionalCheckFailedException
+   *             if the item was changed since it was read
+   */
+  public long savePosition(final LearningUserDataItem dataItem) {
+    Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+    values.put(":start", number(dataItem.getStart()));
+    values.put(":offset", number(dataItem.getOffset()));
+    values.put(":one", number(1L));
+
+    String condition;
+    if (dataItem.getVersion() == null) {
+      condition = "attribute_not_exists(#version)";
+    } else {
+      condition = "#version = :expected";
+      values.put(":expected", number(dataItem.getVersion()));
+    }
+
+    return update(dataItem, "SET #start = :start, #offset = :offset ADD #version :one", condition, values);
+  }
+
+  private long update(LearningUserDataItem dataItem, String updateExpression, String conditionExpression,
+		      Map<String, AttributeValue> values) {
+    Map<String, String> names = new HashMap<String, String>();
+    for (String[] attribute : ATTRIBUTE_NAMES) {
+      if (updateExpression.contains(attribute[0])) {
+	names.put(attribute[0], attribute[1]);
+      }
+    }
+
+    UpdateItemRequest request = new UpdateItemRequest()
+      .withTableName(_tableName)
+      .withKey(Collections.singletonMap("CustomerId", new AttributeValue().withS(dataItem.getCustomerId())))
+      .withUpdateExpression(updateExpression)
+      .withConditionExpression(conditionExpression)
+      .withExpressionAttributeNames(names)
+      .withExpressionAttributeValues(values)
+      .withReturnValues(ReturnValue.UPDATED_NEW);
+
+    UpdateItemResult result = _dbClient.updateItem(request);
+    return Long.parseLong(result.getAttributes().get("Version").getN());
   }
 
-  public void save(final LearningUserDataItem dataItem) {
-    (new DynamoDBMapper(_dbClient)).save(dataItem);
+  private static AttributeValue number(Long value) {
+    return new AttributeValue().withN(Long.toString(value == null ? 0L : value));
   }
 }
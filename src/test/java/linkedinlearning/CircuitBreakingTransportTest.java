@@ -0,0 +1,155 @@
+package linkedinlearning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakingTransportTest {
+
+  private static final long OPEN_MILLIS = 50L;
+
+  /**
+   * Answers every call, or fails it while {@code failing} is set.
+   */
+  private static final class FakeTransport implements LearningApiTransport {
+    final AtomicInteger calls = new AtomicInteger();
+    volatile boolean failing;
+
+    @Override
+    public <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException {
+      calls.incrementAndGet();
+      if (failing) {
+	throw new IOException("failed " + pathAndQuery);
+      }
+      return null;
+    }
+  }
+
+  private FakeTransport _delegate;
+
+  private CircuitBreakingTransport _transport;
+
+  @Before
+  public void setUp() {
+    _delegate = new FakeTransport();
+    // Opens once half of the last four calls failed, and tries two calls when half-open.
+    _transport = new CircuitBreakingTransport(_delegate, 10, 0L, 2, 4, 4, 50, 60 * 1000L, 100, OPEN_MILLIS, 2);
+  }
+
+  @Test
+  public void opensOnceTheFailureRateIsReached() throws Exception {
+    call();
+    call();
+    _delegate.failing = true;
+    callFailing();
+    assertEquals(CircuitBreakingTransport.State.CLOSED, _transport.getState());
+    callFailing();
+    assertEquals(CircuitBreakingTransport.State.OPEN, _transport.getState());
+  }
+
+  @Test
+  public void waitsForTheMinimumCalls() throws Exception {
+    _delegate.failing = true;
+    callFailing();
+    callFailing();
+    callFailing();
+    assertEquals(CircuitBreakingTransport.State.CLOSED, _transport.getState());
+  }
+
+  @Test
+  public void failsFastWhileOpen() throws Exception {
+    open();
+    int calls = _delegate.calls.get();
+    try {
+      _transport.get("/search", body -> null);
+      fail("Expected the open circuit to refuse the call");
+    } catch (LearningApiUnavailableException e) {
+      // expected
+    }
+    assertEquals(calls, _delegate.calls.get());
+  }
+
+  @Test
+  public void closesAfterTheTrialCallsSucceed() throws Exception {
+    open();
+    Thread.sleep(OPEN_MILLIS * 2);
+    _delegate.failing = false;
+
+    call();
+    assertEquals(CircuitBreakingTransport.State.HALF_OPEN, _transport.getState());
+    call();
+    assertEquals(CircuitBreakingTransport.State.CLOSED, _transport.getState());
+  }
+
+  @Test
+  public void reopensWhenATrialCallFails() throws Exception {
+    open();
+    Thread.sleep(OPEN_MILLIS * 2);
+
+    callFailing();
+    assertEquals(CircuitBreakingTransport.State.OPEN, _transport.getState());
+    try {
+      _transport.get("/search", body -> null);
+      fail("Expected the reopened circuit to refuse the call");
+    } catch (LearningApiUnavailableException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void speculativeCallsAreNotRecorded() throws Exception {
+    _delegate.failing = true;
+    for (int i = 0; i < 10; i++) {
+      try {
+	_transport.getSpeculative("/detailedCourses", body -> null, abort -> { });
+	fail("Expected the call to fail");
+      } catch (LearningApiUnavailableException e) {
+	fail("Expected the call to be made, got " + e);
+      } catch (IOException e) {
+	// expected
+      }
+    }
+    assertEquals(CircuitBreakingTransport.State.CLOSED, _transport.getState());
+  }
+
+  @Test
+  public void speculativeCallsAreRefusedUnlessClosed() throws Exception {
+    open();
+    int calls = _delegate.calls.get();
+    try {
+      _transport.getSpeculative("/detailedCourses", body -> null, abort -> { });
+      fail("Expected the open circuit to refuse the call");
+    } catch (LearningApiUnavailableException e) {
+      // expected
+    }
+    assertEquals(calls, _delegate.calls.get());
+  }
+
+  private void open() throws Exception {
+    _delegate.failing = true;
+    for (int i = 0; i < 4; i++) {
+      callFailing();
+    }
+    assertEquals(CircuitBreakingTransport.State.OPEN, _transport.getState());
+  }
+
+  private void call() throws IOException {
+    _transport.get("/search", body -> null);
+  }
+
+  private void callFailing() {
+    try {
+      _transport.get("/search", body -> null);
+      fail("Expected the call to fail");
+    } catch (LearningApiUnavailableException e) {
+      fail("Expected the call to be made, got " + e);
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package linkedinlearning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HedgingTransportTest {
+
+  private static final long HEDGE_DELAY_MILLIS = 20L;
+
+  private static final long DEADLINE_MILLIS = 2000L;
+
+  /**
+   * A call to {@link FakeTransport}, which blocks until the test answers, fails or aborts it.
+   */
+  private static final class Call {
+    final CountDownLatch finished = new CountDownLatch(1);
+    volatile String body;
+    volatile IOException failure;
+    volatile boolean aborted;
+
+    void answer(String body) {
+      this.body = body;
+      finished.countDown();
+    }
+
+    void fail(IOException failure) {
+      this.failure = failure;
+      finished.countDown();
+    }
+
+    void abort() {
+      aborted = true;
+      finished.countDown();
+    }
+  }
+
+  /**
+   * Hands each call to the test, so it decides how long every attempt takes.
+   */
+  private static final class FakeTransport implements LearningApiTransport {
+    final BlockingQueue<Call> calls = new LinkedBlockingQueue<Call>();
+    final BlockingQueue<Call> speculativeCalls = new LinkedBlockingQueue<Call>();
+
+    @Override
+    public <T> T get(String pathAndQuery, ResponseParser<T> parser) throws IOException {
+      return get(pathAndQuery, parser, Long.MAX_VALUE, abort -> { });
+    }
+
+    @Override
+    public <T> T get(String pathAndQuery, ResponseParser<T> parser, long timeoutMillis, Consumer<Runnable> abortHook)
+      throws IOException {
+      Call call = new Call();
+      abortHook.accept(call::abort);
+      calls.add(call);
+      return await(call, parser, timeoutMillis);
+    }
+
+    @Override
+    public <T> T getSpeculative(String pathAndQuery, ResponseParser<T> parser, Consumer<Runnable> abortHook)
+      throws IOException {
+      Call call = new Call();
+      abortHook.accept(call::abort);
+      speculativeCalls.add(call);
+      return await(call, parser, Long.MAX_VALUE);
+    }
+
+    private static <T> T await(Call call, ResponseParser<T> parser, long timeoutMillis) throws IOException {
+      try {
+	if (!call.finished.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+	  // Like a real transport, only notice the deadline once it has passed.
+	  Thread.sleep(1L);
+	  throw new IOException("Timed out");
+	}
+      } catch (InterruptedException e) {
+	throw new IOException("Interrupted", e);
+      }
+      if (call.aborted) {
+	throw new IOException("Aborted");
+      }
+      if (call.failure != null) {
+	throw call.failure;
+      }
+      return parser.parse(new ByteArrayInputStream(call.body.getBytes(StandardCharsets.UTF_8)));
+    }
+  }
+
+  private final ExecutorService _callers = Executors.newCachedThreadPool();
+
+  private FakeTransport _delegate;
+
+  @Before
+  public void setUp() {
+    _delegate = new FakeTransport();
+  }
+
+  @After
+  public void tearDown() {
+    _callers.shutdownNow();
+  }
+
+  @Test
+  public void hedgeThatAnswersFirstWinsAndAbortsThePrimary() throws Exception {
+    Future<String> result = call(hedging(HEDGE_DELAY_MILLIS));
+    Call primary = nextCall();
+    Call hedge = nextCall();
+
+    hedge.answer("hedge");
+    assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+    assertTrue(primary.aborted);
+  }
+
+  @Test
+  public void primaryThatAnswersFirstWinsAndAbortsTheHedge() throws Exception {
+    Future<String> result = call(hedging(HEDGE_DELAY_MILLIS));
+    Call primary = nextCall();
+    Call hedge = nextCall();
+
+    primary.answer("primary");
+    assertEquals("primary", result.get(1, TimeUnit.SECONDS));
+    assertTrue(hedge.aborted);
+  }
+
+  @Test
+  public void fastPrimaryIsNotHedged() throws Exception {
+    HedgingTransport transport = hedging(500L);
+    Future<String> result = call(transport);
+    nextCall().answer("primary");
+
+    assertEquals("primary", result.get(1, TimeUnit.SECONDS));
+    assertNull(_delegate.calls.poll(600L, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void failedPrimaryWaitsForTheHedge() throws Exception {
+    Future<String> result = call(hedging(HEDGE_DELAY_MILLIS));
+    Call primary = nextCall();
+    Call hedge = nextCall();
+
+    primary.fail(new IOException("primary failed"));
+    Thread.sleep(50L);
+    assertFalse(result.isDone());
+    hedge.answer("hedge");
+    assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void reportsThePrimaryFailureWhenBothFail() throws Exception {
+    Future<String> result = call(hedging(HEDGE_DELAY_MILLIS));
+    Call primary = nextCall();
+    Call hedge = nextCall();
+
+    hedge.fail(new IOException("hedge failed"));
+    primary.fail(new IOException("primary failed"));
+    try {
+      result.get(1, TimeUnit.SECONDS);
+      fail("Expected both attempts to fail");
+    } catch (ExecutionException e) {
+      assertEquals("primary failed", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void callsRunningPastTheDeadlineFailAndAreRecorded() throws Exception {
+    HedgingTransport transport = new HedgingTransport(_delegate, false, 95, HEDGE_DELAY_MILLIS, 100, 99, 3, 100L, 100L,
+						      60 * 1000L, 0L);
+    Future<String> result = call(transport);
+    assertNotNull(nextCall());
+    try {
+      result.get(1, TimeUnit.SECONDS);
+      fail("Expected the call to time out");
+    } catch (ExecutionException e) {
+      assertEquals("Timed out", e.getCause().getMessage());
+    }
+    assertEquals(1L, transport.getLatencies("/search").getCount());
+  }
+
+  @Test
+  public void speculativeCallsAreNeitherHedgedNorRecorded() throws Exception {
+    HedgingTransport transport = hedging(HEDGE_DELAY_MILLIS);
+    Future<String> result = _callers.submit(() -> transport.getSpeculative("/search?q=search", HedgingTransportTest::read,
+									    abort -> { }));
+    Call call = _delegate.speculativeCalls.poll(1, TimeUnit.SECONDS);
+    assertNotNull(call);
+    assertNull(_delegate.calls.poll(HEDGE_DELAY_MILLIS * 5, TimeUnit.MILLISECONDS));
+
+    call.answer("speculative");
+    assertEquals("speculative", result.get(1, TimeUnit.SECONDS));
+    assertEquals(0L, transport.getLatencies("/search").getCount());
+  }
+
+  /**
+   * Returns a transport that hedges every call after {@code hedgeDelayMillis}: with no minimum
+   * samples the delay and deadline are their minimums from the start.
+   */
+  private HedgingTransport hedging(long hedgeDelayMillis) {
+    return new HedgingTransport(_delegate, true, 95, hedgeDelayMillis, 100, 99, 3, DEADLINE_MILLIS, DEADLINE_MILLIS,
+				60 * 1000L, 0L);
+  }
+
+  private Future<String> call(HedgingTransport transport) {
+    return _callers.submit(() -> transport.get("/search?q=search", HedgingTransportTest::read));
+  }
+
+  private Call nextCall() throws InterruptedException {
+    Call call = _delegate.calls.poll(1, TimeUnit.SECONDS);
+    assertNotNull("Expected a call", call);
+    return call;
+  }
+
+  private static String read(InputStream body) throws IOException {
+    return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)).readLine();
+  }
+}
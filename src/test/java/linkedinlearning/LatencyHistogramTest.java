@@ -0,0 +1,61 @@
+package linkedinlearning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  private static final long MAX_VALUE = (1L << 27) - 1;
+
+  @Test
+  public void smallValuesHaveTheirOwnBuckets() {
+    for (long value = 0; value < 16; value++) {
+      assertEquals(value, LatencyHistogram.bucket(value));
+      assertEquals(value, LatencyHistogram.upperBound((int) value));
+    }
+  }
+
+  @Test
+  public void upperBoundsRoundTripAndBucketsAreContiguous() {
+    int last = LatencyHistogram.bucket(MAX_VALUE);
+    assertEquals(MAX_VALUE, LatencyHistogram.upperBound(last));
+    for (int bucket = 0; bucket < last; bucket++) {
+      long upperBound = LatencyHistogram.upperBound(bucket);
+      assertEquals("upper bound of bucket " + bucket, bucket, LatencyHistogram.bucket(upperBound));
+      assertEquals("value after bucket " + bucket, bucket + 1, LatencyHistogram.bucket(upperBound + 1));
+    }
+  }
+
+  @Test
+  public void upperBoundsAreWithinAnEighthOfTheValue() {
+    for (long value = 1; value <= MAX_VALUE; value = value * 3 / 2 + 1) {
+      long upperBound = LatencyHistogram.upperBound(LatencyHistogram.bucket(value));
+      assertTrue("upper bound " + upperBound + " of " + value, upperBound >= value && upperBound - value <= value / 8);
+    }
+  }
+
+  @Test
+  public void percentilesAreTheUpperBoundsOfTheirBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram(60 * 1000L);
+    assertEquals(0L, histogram.getPercentile(0.99));
+
+    for (long value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+    assertEquals(100L, histogram.getCount());
+    assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(50)), histogram.getPercentile(0.5));
+    assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(99)), histogram.getPercentile(0.99));
+    assertEquals(1L, histogram.getPercentile(0.0));
+  }
+
+  @Test
+  public void outOfRangeValuesAreClamped() {
+    LatencyHistogram histogram = new LatencyHistogram(60 * 1000L);
+    histogram.record(-5L);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(0L, histogram.getPercentile(0.5));
+    assertEquals(MAX_VALUE, histogram.getPercentile(1.0));
+  }
+}
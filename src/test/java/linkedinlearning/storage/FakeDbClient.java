@@ -0,0 +1,112 @@
+package linkedinlearning.storage;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+
+/**
+ * A {@link LinkedInLearningDbClient} that keeps items in memory, with the same versioning,
+ * conditional position updates and total increments as the table. Writes can be held back to
+ * order them against the DAO's reads and saves.
+ */
+class FakeDbClient extends LinkedInLearningDbClient {
+
+  private final ConcurrentMap<String, LearningUserDataItem> _items =
+    new ConcurrentHashMap<String, LearningUserDataItem>();
+
+  private volatile CountDownLatch _gate;
+
+  private final CountDownLatch _entered = new CountDownLatch(1);
+
+  FakeDbClient() {
+    super(new AmazonDynamoDBClient(new BasicAWSCredentials("test", "test")));
+  }
+
+  /**
+   * Holds back writes until {@link #release()}.
+   */
+  void hold() {
+    _gate = new CountDownLatch(1);
+  }
+
+  void release() {
+    _gate.countDown();
+  }
+
+  /**
+   * Waits until a write is being held back.
+   */
+  void awaitHeld() throws InterruptedException {
+    if (!_entered.await(1, TimeUnit.SECONDS)) {
+      throw new AssertionError("No write was made");
+    }
+  }
+
+  LearningUserData stored(String customerId) {
+    LearningUserDataItem stored = _items.get(customerId);
+    return (stored == null) ? null : stored.toUserData();
+  }
+
+  @Override
+  public LearningUserDataItem load(final LearningUserDataItem dataItem) {
+    LearningUserDataItem stored = _items.get(dataItem.getCustomerId());
+    return (stored == null) ? null : LearningUserDataItem.of(stored.getCustomerId(), stored.toUserData());
+  }
+
+  @Override
+  public long save(final LearningUserDataItem dataItem, final long videosStarted) {
+    awaitGate();
+    synchronized (this) {
+      LearningUserDataItem stored = _items.get(dataItem.getCustomerId());
+      LearningUserData userData = dataItem.toUserData();
+      long total = (stored == null || stored.getTotalVideos() == null) ? 0L : stored.getTotalVideos();
+      userData.setTotalVideos(total + videosStarted);
+      userData.setVersion(nextVersion(stored));
+      _items.put(dataItem.getCustomerId(), LearningUserDataItem.of(dataItem.getCustomerId(), userData));
+      return userData.getVersion();
+    }
+  }
+
+  @Override
+  public long savePosition(final LearningUserDataItem dataItem) {
+    awaitGate();
+    synchronized (this) {
+      LearningUserDataItem stored = _items.get(dataItem.getCustomerId());
+      if (!Objects.equals(dataItem.getVersion(), (stored == null) ? null : stored.getVersion())) {
+	throw new ConditionalCheckFailedException("The conditional request failed");
+      }
+      LearningUserData userData = (stored == null) ? new LearningUserData() : stored.toUserData();
+      userData.setStart(dataItem.getStart());
+      userData.setOffset(dataItem.getOffset());
+      userData.setVersion(nextVersion(stored));
+      _items.put(dataItem.getCustomerId(), LearningUserDataItem.of(dataItem.getCustomerId(), userData));
+      return userData.getVersion();
+    }
+  }
+
+  private void awaitGate() {
+    CountDownLatch gate = _gate;
+    if (gate == null) {
+      return;
+    }
+    _entered.countDown();
+    try {
+      if (!gate.await(5, TimeUnit.SECONDS)) {
+	throw new IllegalStateException("Write was never released");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static long nextVersion(LearningUserDataItem stored) {
+    return (stored == null || stored.getVersion() == null) ? 1L : stored.getVersion() + 1L;
+  }
+}
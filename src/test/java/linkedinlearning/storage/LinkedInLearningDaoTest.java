@@ -0,0 +1,159 @@
+package linkedinlearning.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+
+import linkedinlearning.cache.ExpiringLruCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.User;
+
+public class LinkedInLearningDaoTest {
+
+  private static final String CUSTOMER_ID = "amzn1.ask.account.test";
+
+  private FakeDbClient _dbClient;
+
+  private Session _session;
+
+  @Before
+  public void setUp() {
+    _dbClient = new FakeDbClient();
+    _session = Session.builder()
+      .withSessionId("SessionId.test")
+      .withIsNew(true)
+      .withUser(User.builder().withUserId(CUSTOMER_ID).build())
+      .withAttributes(new HashMap<String, Object>())
+      .build();
+  }
+
+  @Test
+  public void positionSaveFollowsOurOwnFullSave() {
+    LinkedInLearningDao dao = dao(false);
+    startCourse(dao);
+
+    LearningUserData userData = dao.getUserData(_session);
+    assertEquals(Long.valueOf(1L), userData.getVersion());
+    userData.setOffset(42L);
+    dao.savePlaybackPosition(_session, userData);
+
+    assertEquals(42L, _dbClient.stored(CUSTOMER_ID).getOffset());
+    assertEquals(Long.valueOf(2L), _dbClient.stored(CUSTOMER_ID).getVersion());
+    assertEquals(Long.valueOf(2L), dao.getUserData(_session).getVersion());
+  }
+
+  @Test
+  public void stalePositionIsDropped() {
+    LinkedInLearningDao dao = dao(false);
+    startCourse(dao);
+    LearningUserData userData = dao.getUserData(_session);
+
+    // Another device starts something else in between.
+    LearningUserData other = new LearningUserData(userData);
+    other.setSlug("python-essential-training");
+    _dbClient.save(LearningUserDataItem.of(CUSTOMER_ID, other), 1L);
+
+    userData.setOffset(99L);
+    dao.savePlaybackPosition(_session, userData);
+
+    LearningUserData stored = _dbClient.stored(CUSTOMER_ID);
+    assertEquals(0L, stored.getOffset());
+    assertEquals("python-essential-training", stored.getSlug());
+    // The dropped position is not served either.
+    assertEquals("python-essential-training", dao.getUserData(_session).getSlug());
+  }
+
+  @Test
+  public void queuedPositionFollowsTheWriteInFlight() throws Exception {
+    LinkedInLearningDao dao = dao(true);
+    _dbClient.hold();
+    startCourse(dao);
+    _dbClient.awaitHeld();
+
+    LearningUserData userData = dao.getUserData(_session);
+    assertNull(userData.getVersion());
+    userData.setOffset(1234L);
+    dao.savePlaybackPosition(_session, userData);
+
+    _dbClient.release();
+    dao.flush();
+
+    assertEquals(1234L, _dbClient.stored(CUSTOMER_ID).getOffset());
+    assertEquals(Long.valueOf(2L), _dbClient.stored(CUSTOMER_ID).getVersion());
+  }
+
+  @Test
+  public void positionReadFromAWriteThatHasSinceFinishedIsKept() throws Exception {
+    LinkedInLearningDao dao = dao(true);
+    _dbClient.hold();
+    startCourse(dao);
+    _dbClient.awaitHeld();
+
+    // Read while the write is in flight, save only after it has finished.
+    LearningUserData userData = dao.getUserData(_session);
+    assertNull(userData.getVersion());
+    _dbClient.release();
+    dao.flush();
+
+    userData.setOffset(1234L);
+    dao.savePlaybackPosition(_session, userData);
+    dao.flush();
+
+    assertEquals(1234L, _dbClient.stored(CUSTOMER_ID).getOffset());
+    assertEquals(Long.valueOf(2L), _dbClient.stored(CUSTOMER_ID).getVersion());
+  }
+
+  @Test
+  public void startedVideosAreAddedToTheStoredTotal() {
+    LinkedInLearningDao dao = dao(false);
+    startCourse(dao);
+    LearningUserData userData = dao.getUserData(_session);
+
+    // Another device starts a video in between.
+    _dbClient.save(LearningUserDataItem.of(CUSTOMER_ID, _dbClient.stored(CUSTOMER_ID)), 1L);
+
+    dao.saveStartedVideo(_session, userData);
+    assertEquals(3L, _dbClient.stored(CUSTOMER_ID).getTotalVideos());
+  }
+
+  @Test
+  public void coalescedSavesCountEveryStartedVideo() throws Exception {
+    LinkedInLearningDao dao = dao(true);
+    _dbClient.hold();
+    startCourse(dao);
+    _dbClient.awaitHeld();
+
+    LearningUserData userData = dao.getUserData(_session);
+    dao.saveStartedVideo(_session, userData);
+    userData = dao.getUserData(_session);
+    dao.saveStartedVideo(_session, userData);
+    userData = dao.getUserData(_session);
+    userData.setOffset(5L);
+    dao.savePlaybackPosition(_session, userData);
+    assertEquals(3L, dao.getUserData(_session).getTotalVideos());
+
+    _dbClient.release();
+    dao.flush();
+
+    LearningUserData stored = _dbClient.stored(CUSTOMER_ID);
+    assertEquals(3L, stored.getTotalVideos());
+    assertEquals(5L, stored.getOffset());
+  }
+
+  private LinkedInLearningDao dao(boolean writeBehind) {
+    return new LinkedInLearningDao(_dbClient, writeBehind, 2000L,
+				   new ExpiringLruCache<String, LearningUserData>("userData", 100, 60 * 1000L));
+  }
+
+  private void startCourse(LinkedInLearningDao dao) {
+    LearningUserData userData = dao.getUserData(_session);
+    userData.setTitle("Java Essential Training");
+    userData.setSlug("java-essential-training");
+    dao.saveStartedVideo(_session, userData);
+  }
+}